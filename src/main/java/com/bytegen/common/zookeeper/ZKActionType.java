@@ -7,6 +7,7 @@ package com.bytegen.common.zookeeper;
  */
 public enum ZKActionType {
 
+    CHECK_EXISTS,
     GET_DATA,
     DELETE_PATH,
     GET_CHILD_NAMES,
@@ -14,10 +15,16 @@ public enum ZKActionType {
     CREATE_PERSISTENT,
     UPDATE_PERSISTENT,
     SET_DATA,
+    UPDATE_CONFLICT,
     ADD_NODE_CACHE,
     ADD_PATH_CACHE,
     ADD_TREE_CACHE,
     ADD_CACHE_LISTENER,
     REMOVE_CACHE_LISTENER,
+    THROTTLED,
+    EXPORT_TREE,
+    IMPORT_TREE,
+    SYNC_TREE,
+    WATCH_BUDGET_EXCEEDED,
 
 }
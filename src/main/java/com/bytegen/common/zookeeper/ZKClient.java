@@ -1,17 +1,47 @@
 package com.bytegen.common.zookeeper;
 
+import com.bytegen.common.zookeeper.cache.ZKContentListener;
+import com.bytegen.common.zookeeper.cache.ZKDedupNodeCacheListener;
+import com.bytegen.common.zookeeper.cache.ZKDedupPathChildrenCacheListener;
+import com.bytegen.common.zookeeper.cache.ZKPropertiesDeltaListener;
+import com.bytegen.common.zookeeper.chunk.ZKChunkedStorage;
+import com.bytegen.common.zookeeper.limit.ZKRateLimiter;
+import com.bytegen.common.zookeeper.limit.ZKWatchBudget;
+import com.bytegen.common.zookeeper.limit.ZKWatchBudgetExceededException;
 import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+import com.bytegen.common.zookeeper.path.ZKPath;
+import com.bytegen.common.zookeeper.path.ZKPathTrie;
+import com.bytegen.common.zookeeper.serializer.PropertiesSerializer;
 import com.bytegen.common.zookeeper.serializer.ZKDataSerializer;
+import com.bytegen.common.zookeeper.snapshot.ZKSubtreeView;
+import com.bytegen.common.zookeeper.transfer.ZKTreeTransfer;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.listen.Listenable;
 import org.apache.curator.framework.recipes.cache.*;
-import org.apache.curator.utils.ZKPaths;
+import org.apache.curator.utils.CloseableUtils;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * User: xiang
@@ -20,19 +50,74 @@ import java.util.Map;
  */
 public final class ZKClient {
 
+    private static final int DEFAULT_UPDATE_RETRIES = 10;
+    private static final long UPDATE_BACKOFF_BASE_MS = 10;
+    private static final long UPDATE_BACKOFF_MAX_MS = 1000;
+
     private final String environment;
     private final String server;
     private final String auth;
+    /**
+     * All paths, caches and monitor events of the client are relative to the namespace, null for none
+     */
+    private final String namespace;
 
-    private final Map<String, NodeCache> nodeCacheMap = new HashMap<>();
-    private final Map<String, PathChildrenCache> pathChildrenCacheMap = new HashMap<>();
-    private final Map<String, TreeCache> treeCacheMap = new HashMap<>();
+    private final ZKConnection connection;
+    /**
+     * Resolved once, so operations do not look up the holder
+     */
+    private final CuratorFramework framework;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Caches are read without locking and created under cacheLock, which does not pin virtual threads
+     */
+    private final Map<String, NodeCache> nodeCacheMap = new ConcurrentHashMap<>();
+    private final Map<String, PathChildrenCache> pathChildrenCacheMap = new ConcurrentHashMap<>();
+    private final Map<String, TreeCache> treeCacheMap = new ConcurrentHashMap<>();
+    /**
+     * Tree caches by root path, to find the tree cache covering a path
+     */
+    private final ZKPathTrie<TreeCache> treeCacheTrie = new ZKPathTrie<>();
+    /**
+     * Root paths of tree caches which have sent INITIALIZED, recorded on the event thread before other listeners run
+     */
+    private final Set<String> initializedTreeCaches = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    /**
+     * Executor of cache listener callbacks, null for the curator event thread, see {@link ZKExecutors}
+     */
+    private final ExecutorService listenerExecutor = ZKExecutors.newListenerExecutor();
+
+    private final ZKUpdateStats updateStats = new ZKUpdateStats();
+
+    private volatile ZKRateLimiter rateLimiter;
+
+    private final ZKSingleFlight<ChildData> dataFlight = new ZKSingleFlight<>(ZKClient::copyChildData);
+    private final ZKSingleFlight<List<String>> childrenFlight = new ZKSingleFlight<>(ArrayList::new);
+
+    private final ZKChunkedStorage chunkedStorage = new ZKChunkedStorage(this);
 
     ZKClient(String environment, String server, String auth) {
-        ZKClientHolder.tryCreateClient(server, auth);
+        this(environment, server, auth, null);
+    }
+
+    ZKClient(String environment, String server, String auth, String namespace) {
         this.environment = environment;
         this.server = server;
         this.auth = auth;
+        this.namespace = normalizeNamespace(namespace);
+        this.connection = ZKClientHolder.tryCreateClient(server, auth);
+        this.framework = null == this.namespace
+                ? connection.getFramework() : connection.getFramework().usingNamespace(this.namespace);
+    }
+
+    private static String normalizeNamespace(String namespace) {
+        if (StringUtils.isBlank(namespace)) {
+            return null;
+        }
+        String normalized = StringUtils.strip(namespace.trim(), ZKConstant.PATH_SEPERATOR);
+        return normalized.isEmpty() ? null : normalized;
     }
 
     public String getEnvironment() {
@@ -43,6 +128,31 @@ public final class ZKClient {
         return server;
     }
 
+    /**
+     * Servers currently used, which differ from {@link #getServer()} once swapped by a settings watch of the environment.
+     */
+    public String getConnectString() {
+        return framework.getZookeeperClient().getCurrentConnectionString();
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Get a client view scoped to the namespace, nested in the namespace of this client if any.
+     * The view shares the underlying connection, and has to be closed as well.
+     */
+    public ZKClient usingNamespace(final String namespace) {
+        Validate.notBlank(namespace, "Namespace can't be blank.");
+        String child = normalizeNamespace(namespace);
+        Validate.notNull(child, "Namespace can't be blank.");
+        ZKClient client = new ZKClient(environment, server, auth,
+                null == this.namespace ? child : this.namespace + ZKConstant.PATH_SEPERATOR + child);
+        client.setRateLimiter(rateLimiter);
+        return client;
+    }
+
     public Map<String, NodeCache> getNodeCacheMap() {
         return nodeCacheMap;
     }
@@ -55,12 +165,138 @@ public final class ZKClient {
         return treeCacheMap;
     }
 
+    /**
+     * Whether the tree cache of path has loaded the whole tree. A listener added while this is false still gets
+     * the INITIALIZED event.
+     */
+    public boolean isTreeCacheInitialized(final String path) {
+        return initializedTreeCaches.contains(getRealPath(path));
+    }
+
+    public ZKUpdateStats getUpdateStats() {
+        return updateStats;
+    }
+
+    public ZKRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Set the client side rate limiter, null to disable rate limiting.
+     */
+    public void setRateLimiter(ZKRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public ZKWatchBudget getWatchBudget() {
+        return connection.getWatchBudget();
+    }
+
+    /**
+     * Set the budget of cache watches, shared by all clients of the same connection, null for no limit.
+     * Only caches created afterwards are checked.
+     */
+    public void setWatchBudget(ZKWatchBudget watchBudget) {
+        connection.setWatchBudget(watchBudget);
+    }
+
+    /**
+     * Watches currently set by the caches of all clients of the same connection.
+     */
+    public ZKWatchSnapshot getWatchSnapshot() {
+        return connection.getWatchTracker().snapshot(connection.getWatchBudget());
+    }
+
+    /**
+     * Wait for or reject an operation by the rate limiter, also for operations made through {@link #getFramework()}.
+     */
+    public void acquirePermit(ZKActionType type, String realPath) throws InterruptedException {
+        ZKRateLimiter limiter = rateLimiter;
+        if (null != limiter) {
+            limiter.acquire(type, realPath, this);
+        }
+    }
+
+    /**
+     * Close the caches of this client and release the shared connection, closed when no client uses it.
+     * Calling it again has no effect.
+     */
     public void close() {
-        ZKClientHolder.tryCloseClient(server, auth);
+        if (closed.compareAndSet(false, true)) {
+            // the caches' watches stay on the shared connection until the caches are closed
+            closeCaches();
+            connection.getWatchTracker().releaseAll(this);
+            ZKClientHolder.tryCloseClient(connection);
+            if (null != listenerExecutor) {
+                listenerExecutor.shutdown();
+            }
+        }
+    }
+
+    private void closeCaches() {
+        cacheLock.lock();
+        try {
+            for (NodeCache cache : nodeCacheMap.values()) {
+                CloseableUtils.closeQuietly(cache);
+            }
+            for (PathChildrenCache cache : pathChildrenCacheMap.values()) {
+                CloseableUtils.closeQuietly(cache);
+            }
+            for (Map.Entry<String, TreeCache> entry : treeCacheMap.entrySet()) {
+                CloseableUtils.closeQuietly(entry.getValue());
+                treeCacheTrie.remove(ZKPath.of(entry.getKey()));
+            }
+            nodeCacheMap.clear();
+            pathChildrenCacheMap.clear();
+            treeCacheMap.clear();
+            initializedTreeCaches.clear();
+        } finally {
+            cacheLock.unlock();
+        }
     }
 
     public CuratorFramework getFramework() {
-        return ZKClientHolder.getClient(server, auth);
+        return framework;
+    }
+
+    /**
+     * Completed with this client once the connection is established; the connection is started in background.
+     */
+    public CompletableFuture<ZKClient> whenConnected() {
+        return connection.getConnectedFuture().thenApply(v -> this);
+    }
+
+    /**
+     * Run a blocking operation of this client on the dispatch executor, one virtual thread per operation
+     * when virtual threads are enabled, see {@link ZKExecutors}.
+     */
+    public <V> CompletableFuture<V> dispatch(final ZKOperation<V> operation) {
+        Validate.notNull(operation, "Operation can't be null.");
+        CompletableFuture<V> future = new CompletableFuture<>();
+        ZKExecutors.getDispatchExecutor().execute(() -> {
+            try {
+                future.complete(operation.execute(this));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Wait until the connection is established.
+     *
+     * @return false on timeout
+     */
+    public boolean blockUntilConnected(final long timeout, final TimeUnit unit) throws InterruptedException {
+        try {
+            connection.getConnectedFuture().get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
 
@@ -71,14 +307,28 @@ public final class ZKClient {
      * Gets the real Zookeeper node path.
      */
     public String getRealPath(String path) {
-        return ZKPaths.makePath(path, null);
+        return ZKPath.of(path).getPath();
+    }
+
+    /**
+     * Tell the client the node and its subtree were written through it, so reads starting now never join
+     * a load which began before the write; called by the write methods and helpers of the client.
+     */
+    public void markWritten(final String path) {
+        ZKPath written = ZKPath.of(path);
+        dataFlight.forget(written.getPath());
+        childrenFlight.forget(written.getPath());
+        for (ZKPath parent = written; !parent.isRoot(); ) {
+            parent = parent.getParent();
+            childrenFlight.forgetKey(parent.getPath());
+        }
     }
 
     /**
      * Test whether the node specified by path exists or not.
      */
     public boolean exists(final String path) throws Exception {
-        Stat zkStat = getZKStat(getRealPath(path));
+        Stat zkStat = getZKStat(path);
         return zkStat != null;
     }
 
@@ -86,21 +336,24 @@ public final class ZKClient {
      * Get Stat of the node specified by path.
      */
     public Stat getZKStat(final String path) throws Exception {
-        return getFramework().checkExists().forPath(getRealPath(path));
+        String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.CHECK_EXISTS, realPath);
+        return getFramework().checkExists().forPath(realPath);
     }
 
     /**
      * Get the data of given path.
+     * Concurrent reads of the same path share one request, which never started before a write by this client.
      */
     public byte[] getData(final String path) throws Exception {
-        byte[] bytes = getFramework().getData().forPath(getRealPath(path));
+        byte[] bytes = loadData(getRealPath(path)).getData();
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_DATA, this, path, bytes);
         return bytes;
     }
 
     public <T> T getData(final String path, final ZKDataSerializer<T> serializer) throws Exception {
         String realPath = getRealPath(path);
-        byte[] bytes = getFramework().getData().forPath(realPath);
+        byte[] bytes = loadData(realPath).getData();
         T data = null;
         if (null != bytes) {
             data = serializer.deserialize(bytes);
@@ -116,7 +369,9 @@ public final class ZKClient {
         Validate.notNull(stat, "Stat can not be null");
 
         String realPath = getRealPath(path);
-        byte[] bytes = getFramework().getData().storingStatIn(stat).forPath(realPath);
+        ChildData childData = loadData(realPath);
+        copyStat(childData.getStat(), stat);
+        byte[] bytes = childData.getData();
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_DATA, this, realPath, bytes);
         return bytes;
     }
@@ -125,7 +380,9 @@ public final class ZKClient {
         Validate.notNull(stat, "Stat can not be null");
 
         String realPath = getRealPath(path);
-        byte[] bytes = getFramework().getData().storingStatIn(stat).forPath(realPath);
+        ChildData childData = loadData(realPath);
+        copyStat(childData.getStat(), stat);
+        byte[] bytes = childData.getData();
         T data = null;
         if (null != bytes) {
             data = serializer.deserialize(bytes);
@@ -134,16 +391,86 @@ public final class ZKClient {
         return data;
     }
 
+    /**
+     * Get the data of given path in background.
+     * Shares the request with concurrent sync and async reads of the same path.
+     */
+    public CompletableFuture<byte[]> getDataAsync(final String path) {
+        String realPath = getRealPath(path);
+        return loadDataAsync(realPath).thenApply(childData -> {
+            ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_DATA, this, realPath, childData.getData());
+            return childData.getData();
+        });
+    }
+
+    public <T> CompletableFuture<T> getDataAsync(final String path, final ZKDataSerializer<T> serializer) {
+        String realPath = getRealPath(path);
+        return loadDataAsync(realPath).thenApply(childData -> {
+            T data = null;
+            if (null != childData.getData()) {
+                data = serializer.deserialize(childData.getData());
+            }
+            ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_DATA, this, realPath, data);
+            return data;
+        });
+    }
+
+    private ChildData loadData(final String realPath) throws Exception {
+        return dataFlight.execute(realPath, () -> {
+            acquirePermit(ZKActionType.GET_DATA, realPath);
+            Stat stat = new Stat();
+            byte[] bytes = getFramework().getData().storingStatIn(stat).forPath(realPath);
+            return new ChildData(realPath, stat, bytes);
+        });
+    }
+
+    private CompletableFuture<ChildData> loadDataAsync(final String realPath) {
+        return dataFlight.executeAsync(realPath, loaded -> {
+            acquirePermit(ZKActionType.GET_DATA, realPath);
+            getFramework().getData().inBackground((framework, event) -> {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    loaded.complete(new ChildData(realPath, event.getStat(), event.getData()));
+                } else {
+                    loaded.completeExceptionally(
+                            KeeperException.create(KeeperException.Code.get(event.getResultCode()), realPath));
+                }
+            }).forPath(realPath);
+        });
+    }
+
+    private static ChildData copyChildData(ChildData childData) {
+        Stat stat = new Stat();
+        copyStat(childData.getStat(), stat);
+        byte[] data = null == childData.getData() ? null : childData.getData().clone();
+        return new ChildData(childData.getPath(), stat, data);
+    }
+
+    private static void copyStat(Stat from, Stat to) {
+        to.setCzxid(from.getCzxid());
+        to.setMzxid(from.getMzxid());
+        to.setCtime(from.getCtime());
+        to.setMtime(from.getMtime());
+        to.setVersion(from.getVersion());
+        to.setCversion(from.getCversion());
+        to.setAversion(from.getAversion());
+        to.setEphemeralOwner(from.getEphemeralOwner());
+        to.setDataLength(from.getDataLength());
+        to.setNumChildren(from.getNumChildren());
+        to.setPzxid(from.getPzxid());
+    }
+
     /**
      * Delete the given path.
      */
     public void deletePath(final String path, final boolean deleteChildren) throws Exception {
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.DELETE_PATH, realPath);
         if (deleteChildren) {
             getFramework().delete().deletingChildrenIfNeeded().forPath(realPath);
         } else {
             getFramework().delete().forPath(realPath);
         }
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.DELETE_PATH, this, realPath, null);
     }
 
@@ -153,7 +480,9 @@ public final class ZKClient {
      */
     public void createEphemeral(final String path) throws Exception {
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.CREATE_EPHEMERAL, realPath);
         getFramework().create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(realPath);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_EPHEMERAL, this, realPath, null);
     }
 
@@ -161,8 +490,10 @@ public final class ZKClient {
         Validate.notNull(data, "Data can't be null.");
 
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.CREATE_EPHEMERAL, realPath);
         byte[] nodeData = serializer.serialize(data);
         getFramework().create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(realPath, nodeData);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_EPHEMERAL, this, realPath, nodeData);
     }
 
@@ -170,8 +501,10 @@ public final class ZKClient {
      * Create a ephemeral and sequential node.
      */
     public String createEphemeralSequential(final String path) throws Exception {
+        acquirePermit(ZKActionType.CREATE_EPHEMERAL, getRealPath(path));
         String result = getFramework().create().creatingParentsIfNeeded()
                 .withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(getRealPath(path));
+        markWritten(result);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_EPHEMERAL, this, result, null);
         return result;
     }
@@ -179,9 +512,11 @@ public final class ZKClient {
     public <T> String createEphemeralSequential(final String path, final T data, final ZKDataSerializer<T> serializer) throws Exception {
         Validate.notNull(data, "Data can't be null.");
 
+        acquirePermit(ZKActionType.CREATE_EPHEMERAL, getRealPath(path));
         byte[] nodeData = serializer.serialize(data);
         String result = getFramework().create().creatingParentsIfNeeded()
                 .withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(getRealPath(path), nodeData);
+        markWritten(result);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_EPHEMERAL, this, result, nodeData);
         return result;
     }
@@ -191,8 +526,10 @@ public final class ZKClient {
      */
     public void createPersistent(final String path) throws Exception {
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.CREATE_PERSISTENT, realPath);
         getFramework().create().creatingParentsIfNeeded()
                 .withMode(CreateMode.PERSISTENT).forPath(realPath);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_PERSISTENT, this, realPath, null);
     }
 
@@ -200,9 +537,11 @@ public final class ZKClient {
         Validate.notNull(data, "Data can't be null.");
 
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.CREATE_PERSISTENT, realPath);
         byte[] nodeData = serializer.serialize(data);
         getFramework().create().creatingParentsIfNeeded()
                 .withMode(CreateMode.PERSISTENT).forPath(realPath, nodeData);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_PERSISTENT, this, realPath, nodeData);
     }
 
@@ -213,9 +552,11 @@ public final class ZKClient {
         Validate.notNull(data, "Data can't be null.");
 
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.UPDATE_PERSISTENT, realPath);
         byte[] nodeData = serializer.serialize(data);
         getFramework().create().orSetData().creatingParentsIfNeeded()
                 .withMode(CreateMode.PERSISTENT).forPath(realPath, nodeData);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.UPDATE_PERSISTENT, this, realPath, nodeData);
     }
 
@@ -226,8 +567,10 @@ public final class ZKClient {
         Validate.notNull(data, "Data can't be null.");
 
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.SET_DATA, realPath);
         byte[] nodeData = serializer.serialize(data);
         getFramework().setData().forPath(realPath, nodeData);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.SET_DATA, this, realPath, nodeData);
     }
 
@@ -235,35 +578,285 @@ public final class ZKClient {
         Validate.notNull(data, "Data can't be null.");
 
         String realPath = getRealPath(path);
+        acquirePermit(ZKActionType.SET_DATA, realPath);
         byte[] nodeData = serializer.serialize(data);
         getFramework().setData().withVersion(expectedVersion).forPath(realPath, nodeData);
+        markWritten(realPath);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.SET_DATA, this, realPath, nodeData);
     }
 
+    /**
+     * Create a writer which coalesces writes to the same path and flushes the latest values every interval.
+     * The caller owns the writer and should close it to flush the remaining writes.
+     */
+    public ZKCoalescingWriter newCoalescingWriter(final long interval, final TimeUnit unit) {
+        Validate.notNull(unit, "Time unit can't be null.");
+        return new ZKCoalescingWriter(this, interval, unit);
+    }
+
+    /**
+     * Create a snapshot view of the subtree, backed by its tree cache, which publishes the changes of each
+     * coalesce interval together.
+     * The caller owns the view and should close it; the tree cache stays open.
+     */
+    public ZKSubtreeView newSubtreeView(final String path) throws Exception {
+        return newSubtreeView(path, ZKSubtreeView.DEFAULT_HISTORY_SIZE,
+                ZKSubtreeView.DEFAULT_COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public ZKSubtreeView newSubtreeView(final String path, final int historySize,
+                                        final long coalesceInterval, final TimeUnit unit) throws Exception {
+        Validate.notBlank(path, "Subtree path can't be blank.");
+        Validate.notNull(unit, "Time unit can't be null.");
+        return new ZKSubtreeView(this, path, historySize, coalesceInterval, unit);
+    }
+
+    /**
+     * Read-modify-write the node data with optimistic concurrency.
+     * The updater gets the current value (null if the node does not exist) and returns the new one,
+     * which is written only if the node is unchanged since the read; on conflict it is re-read and retried.
+     */
+    public <T> T update(final String path, final ZKDataSerializer<T> serializer, final Function<T, T> updater) throws Exception {
+        return update(path, serializer, updater, DEFAULT_UPDATE_RETRIES);
+    }
+
+    public <T> T update(final String path, final ZKDataSerializer<T> serializer, final Function<T, T> updater,
+                        final int maxRetries) throws Exception {
+        Validate.notNull(serializer, "Serializer can't be null.");
+        Validate.notNull(updater, "Updater can't be null.");
+        Validate.isTrue(maxRetries >= 0, "Max retries can't be negative.");
+
+        String realPath = getRealPath(path);
+        // a warm cache saves the first read; after a conflict it is known to be stale
+        boolean readCache = true;
+        for (int attempt = 0; ; attempt++) {
+            ChildData read = readCache ? getCachedData(realPath) : null;
+            if (null != read) {
+                updateStats.recordCacheRead();
+            } else {
+                acquirePermit(ZKActionType.GET_DATA, realPath);
+                read = getDataIfExists(realPath);
+            }
+
+            // a node may exist without data, so existence comes from the read rather than from its bytes
+            boolean exists = null != read;
+            byte[] bytes = exists ? read.getData() : null;
+            T current = null == bytes ? null : serializer.deserialize(bytes);
+            T data = updater.apply(current);
+            Validate.notNull(data, "Data can't be null.");
+            byte[] nodeData = serializer.serialize(data);
+            acquirePermit(exists ? ZKActionType.SET_DATA : ZKActionType.CREATE_PERSISTENT, realPath);
+            try {
+                if (!exists) {
+                    getFramework().create().creatingParentsIfNeeded()
+                            .withMode(CreateMode.PERSISTENT).forPath(realPath, nodeData);
+                    markWritten(realPath);
+                    ZKActionMonitor.getInstance().triggerAction(ZKActionType.CREATE_PERSISTENT, this, realPath, nodeData);
+                } else {
+                    getFramework().setData().withVersion(read.getStat().getVersion()).forPath(realPath, nodeData);
+                    markWritten(realPath);
+                    ZKActionMonitor.getInstance().triggerAction(ZKActionType.SET_DATA, this, realPath, nodeData);
+                }
+                updateStats.recordUpdate();
+                return data;
+            } catch (KeeperException.BadVersionException | KeeperException.NoNodeException
+                    | KeeperException.NodeExistsException e) {
+                updateStats.recordConflict();
+                ZKActionMonitor.getInstance().triggerAction(ZKActionType.UPDATE_CONFLICT, this, realPath, attempt + 1);
+                if (attempt >= maxRetries) {
+                    updateStats.recordExhausted();
+                    throw e;
+                }
+                readCache = false;
+                backoff(attempt);
+            }
+        }
+    }
+
+    private <L> void addListener(final Listenable<L> listenable, final L listener) {
+        if (null == listenerExecutor) {
+            listenable.addListener(listener);
+        } else {
+            listenable.addListener(listener, listenerExecutor);
+        }
+    }
+
+    /**
+     * Data and Stat of the node from a started cache, or null if no cache holds it.
+     */
+    private ChildData getCachedData(final String realPath) {
+        ChildData childData = null;
+        NodeCache nodeCache = nodeCacheMap.get(realPath);
+        if (null != nodeCache) {
+            childData = nodeCache.getCurrentData();
+        }
+        ZKPath zkPath = ZKPath.of(realPath);
+        if (null == childData && !zkPath.isRoot()) {
+            String parent = zkPath.getParent().getPath();
+            PathChildrenCache cache = pathChildrenCacheMap.get(parent);
+            if (null != cache) {
+                childData = cache.getCurrentData(realPath);
+            }
+        }
+        if (null == childData) {
+            TreeCache cache = treeCacheTrie.getClosest(zkPath);
+            if (null != cache) {
+                childData = cache.getCurrentData(realPath);
+            }
+        }
+        if (null == childData || null == childData.getData() || null == childData.getStat()) {
+            return null;
+        }
+        return childData;
+    }
+
+    /**
+     * Data and Stat of the node, or null if it does not exist.
+     */
+    private ChildData getDataIfExists(final String realPath) throws Exception {
+        Stat stat = new Stat();
+        try {
+            byte[] bytes = getFramework().getData().storingStatIn(stat).forPath(realPath);
+            return new ChildData(realPath, stat, bytes);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    private static void backoff(final int attempt) throws InterruptedException {
+        long cap = Math.min(UPDATE_BACKOFF_MAX_MS, UPDATE_BACKOFF_BASE_MS << Math.min(attempt, 16));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
     /**
      * Get all children names of given parent path.
      */
     public List<String> getChildrenNames(final String path) throws Exception {
         String realPath = getRealPath(path);
-        List<String> names = getFramework().getChildren().forPath(realPath);
+        List<String> names = childrenFlight.execute(realPath, () -> {
+            acquirePermit(ZKActionType.GET_CHILD_NAMES, realPath);
+            return getFramework().getChildren().forPath(realPath);
+        });
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_CHILD_NAMES, this, realPath, names);
         return names;
     }
 
+    public CompletableFuture<List<String>> getChildrenNamesAsync(final String path) {
+        String realPath = getRealPath(path);
+        return childrenFlight.executeAsync(realPath, loaded -> {
+            acquirePermit(ZKActionType.GET_CHILD_NAMES, realPath);
+            getFramework().getChildren().inBackground((framework, event) -> {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    loaded.complete(event.getChildren());
+                } else {
+                    loaded.completeExceptionally(
+                            KeeperException.create(KeeperException.Code.get(event.getResultCode()), realPath));
+                }
+            }).forPath(realPath);
+        }).thenApply(names -> {
+            ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_CHILD_NAMES, this, realPath, names);
+            return names;
+        });
+    }
+
+    /**
+     * Set data of any size: values are split into chunk children of the node, see {@link ZKChunkedStorage}.
+     * Creates the node if it does not exist.
+     */
+    public <T> void setLargeData(final String path, final T data, final ZKDataSerializer<T> serializer) throws Exception {
+        Validate.notNull(data, "Data can't be null.");
+        chunkedStorage.write(path, serializer.serialize(data));
+    }
+
+    /**
+     * Get data written by {@link #setLargeData}, checksum verified.
+     */
+    public <T> T getLargeData(final String path, final ZKDataSerializer<T> serializer) throws Exception {
+        return serializer.deserialize(chunkedStorage.read(path));
+    }
+
+    /**
+     * Stream data written by {@link #setLargeData} without building the whole array.
+     */
+    public InputStream getLargeDataStream(final String path) throws Exception {
+        return chunkedStorage.openStream(path);
+    }
+
+    /**
+     * Export the subtree of given path to the output, see {@link ZKTreeTransfer}.
+     *
+     * @return number of exported nodes
+     */
+    public long exportTree(final String path, final OutputStream output) throws Exception {
+        return ZKTreeTransfer.exportTree(this, path, output, ZKTreeTransfer.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Import the nodes exported by {@link #exportTree} under given path, see {@link ZKTreeTransfer}.
+     *
+     * @return number of imported nodes
+     */
+    public long importTree(final String path, final InputStream input) throws Exception {
+        return ZKTreeTransfer.importTree(this, path, input, ZKTreeTransfer.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Check a new cache against the watch budget of the connection and count its watches.
+     */
+    private ZKWatchTracker.Entry reserveWatches(final ZKWatchSnapshot.CacheType type, final String realPath) throws Exception {
+        ZKWatchTracker tracker = connection.getWatchTracker();
+        ZKWatchBudget budget = connection.getWatchBudget();
+        String watchPath = null == namespace ? realPath : ZKConstant.PATH_SEPERATOR + namespace
+                + (ZKConstant.PATH_SEPERATOR.equals(realPath) ? "" : realPath);
+        try {
+            switch (type) {
+                case NODE:
+                    return tracker.reserveNode(this, watchPath, budget);
+                case PATH_CHILDREN:
+                    return tracker.reservePathChildren(this, getFramework(), realPath, watchPath, budget);
+                default:
+                    ZKWatchTracker.Entry entry = tracker.reserveTree(this, getFramework(), realPath, watchPath, budget);
+                    if (entry.getMaxDepth() != Integer.MAX_VALUE) {
+                        ZKActionMonitor.getInstance().triggerAction(ZKActionType.WATCH_BUDGET_EXCEEDED, this, realPath,
+                                "tree cache degraded to max depth " + entry.getMaxDepth());
+                    }
+                    return entry;
+            }
+        } catch (ZKWatchBudgetExceededException e) {
+            ZKActionMonitor.getInstance().triggerAction(ZKActionType.WATCH_BUDGET_EXCEEDED, this, realPath, e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * Add new node cache
      */
     public NodeCache getNodeCache(final String path) throws Exception {
         String realPath = getRealPath(path);
-        synchronized (nodeCacheMap) {
-            NodeCache cache = nodeCacheMap.get(realPath);
+        NodeCache cache = nodeCacheMap.get(realPath);
+        if (null != cache) {
+            return cache;
+        }
+        cacheLock.lock();
+        try {
+            cache = nodeCacheMap.get(realPath);
             if (null == cache) {
-                cache = new NodeCache(getFramework(), realPath);
-                cache.start();
+                // a cache created after close would never be closed
+                Validate.validState(!closed.get(), "Client is closed.");
+                ZKWatchTracker.Entry watches = reserveWatches(ZKWatchSnapshot.CacheType.NODE, realPath);
+                try {
+                    cache = new NodeCache(getFramework(), realPath);
+                    cache.start();
+                } catch (Exception e) {
+                    connection.getWatchTracker().release(watches);
+                    throw e;
+                }
                 nodeCacheMap.put(realPath, cache);
                 ZKActionMonitor.getInstance().triggerAction(ZKActionType.ADD_NODE_CACHE, this, realPath, null);
             }
             return cache;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -273,7 +866,7 @@ public final class ZKClient {
 
         String realPath = getRealPath(path);
         NodeCache cache = getNodeCache(realPath);
-        cache.getListenable().addListener(nodeCacheListener);
+        addListener(cache.getListenable(), nodeCacheListener);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.ADD_CACHE_LISTENER, this, realPath, null);
         return cache;
     }
@@ -289,20 +882,57 @@ public final class ZKClient {
         return cache;
     }
 
+    /**
+     * Add a node cache listener called only when the node content really changes.
+     *
+     * @return the registered listener, to remove it by {@link #removeNodeCacheListener}
+     */
+    public <T> ZKDedupNodeCacheListener<T> addNodeContentListener(final String path, final ZKDataSerializer<T> serializer,
+                                                                final ZKContentListener<T> listener) throws Exception {
+        Validate.notNull(serializer, "Serializer can't be null.");
+        Validate.notNull(listener, "Node content listener can't be null.");
+
+        ZKDedupNodeCacheListener<T> dedupListener = new ZKDedupNodeCacheListener<>(getNodeCache(path), serializer, listener);
+        dedupListener.register(() -> addNodeCacheListener(path, dedupListener));
+        return dedupListener;
+    }
+
+    public ZKDedupNodeCacheListener<Properties> addNodePropertiesListener(final String path,
+                                                                       final ZKPropertiesDeltaListener listener) throws Exception {
+        Validate.notNull(listener, "Node properties listener can't be null.");
+        return addNodeContentListener(path, PropertiesSerializer.getInstance(), ZKPropertiesDeltaListener.asContentListener(listener));
+    }
+
     /**
      * Add new children cache
      */
     public PathChildrenCache getPathChildCache(final String path) throws Exception {
         String realPath = getRealPath(path);
-        synchronized (pathChildrenCacheMap) {
-            PathChildrenCache cache = pathChildrenCacheMap.get(realPath);
+        PathChildrenCache cache = pathChildrenCacheMap.get(realPath);
+        if (null != cache) {
+            return cache;
+        }
+        cacheLock.lock();
+        try {
+            cache = pathChildrenCacheMap.get(realPath);
             if (null == cache) {
-                cache = new PathChildrenCache(getFramework(), realPath, true);
-                cache.start();
+                // a cache created after close would never be closed
+                Validate.validState(!closed.get(), "Client is closed.");
+                ZKWatchTracker.Entry watches = reserveWatches(ZKWatchSnapshot.CacheType.PATH_CHILDREN, realPath);
+                try {
+                    cache = new PathChildrenCache(getFramework(), realPath, true);
+                    cache.getListenable().addListener(watches);
+                    cache.start();
+                } catch (Exception e) {
+                    connection.getWatchTracker().release(watches);
+                    throw e;
+                }
                 pathChildrenCacheMap.put(realPath, cache);
                 ZKActionMonitor.getInstance().triggerAction(ZKActionType.ADD_PATH_CACHE, this, realPath, null);
             }
             return cache;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -312,7 +942,7 @@ public final class ZKClient {
 
         String realPath = getRealPath(path);
         PathChildrenCache cache = getPathChildCache(realPath);
-        cache.getListenable().addListener(listener);
+        addListener(cache.getListenable(), listener);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.ADD_CACHE_LISTENER, this, realPath, null);
         return cache;
     }
@@ -328,20 +958,65 @@ public final class ZKClient {
         return cache;
     }
 
+    /**
+     * Add a path children cache listener called only when a child content really changes.
+     *
+     * @return the registered listener, to remove it by {@link #removePathChildCacheListener}
+     */
+    public <T> ZKDedupPathChildrenCacheListener<T> addPathChildContentListener(final String path, final ZKDataSerializer<T> serializer,
+                                                                             final ZKContentListener<T> listener) throws Exception {
+        Validate.notNull(serializer, "Serializer can't be null.");
+        Validate.notNull(listener, "Path children content listener can't be null.");
+
+        ZKDedupPathChildrenCacheListener<T> dedupListener =
+                new ZKDedupPathChildrenCacheListener<>(getPathChildCache(path), serializer, listener);
+        dedupListener.register(() -> addPathChildCacheListener(path, dedupListener));
+        return dedupListener;
+    }
+
+    public ZKDedupPathChildrenCacheListener<Properties> addPathChildPropertiesListener(final String path,
+                                                                                    final ZKPropertiesDeltaListener listener) throws Exception {
+        Validate.notNull(listener, "Path children properties listener can't be null.");
+        return addPathChildContentListener(path, PropertiesSerializer.getInstance(), ZKPropertiesDeltaListener.asContentListener(listener));
+    }
+
     /**
      * Add new tree cache
      */
     public TreeCache getTreeCache(final String path) throws Exception {
         String realPath = getRealPath(path);
-        synchronized (treeCacheMap) {
-            TreeCache cache = treeCacheMap.get(realPath);
+        TreeCache cache = treeCacheMap.get(realPath);
+        if (null != cache) {
+            return cache;
+        }
+        cacheLock.lock();
+        try {
+            cache = treeCacheMap.get(realPath);
             if (null == cache) {
-                cache = new TreeCache(getFramework(), realPath);
-                cache.start();
+                // a cache created after close would never be closed
+                Validate.validState(!closed.get(), "Client is closed.");
+                ZKWatchTracker.Entry watches = reserveWatches(ZKWatchSnapshot.CacheType.TREE, realPath);
+                try {
+                    cache = watches.getMaxDepth() == Integer.MAX_VALUE ? new TreeCache(getFramework(), realPath)
+                            : TreeCache.newBuilder(getFramework(), realPath).setMaxDepth(watches.getMaxDepth()).build();
+                    cache.getListenable().addListener(watches);
+                    cache.getListenable().addListener((f, event) -> {
+                        if (event.getType() == TreeCacheEvent.Type.INITIALIZED) {
+                            initializedTreeCaches.add(realPath);
+                        }
+                    });
+                    cache.start();
+                } catch (Exception e) {
+                    connection.getWatchTracker().release(watches);
+                    throw e;
+                }
                 treeCacheMap.put(realPath, cache);
+                treeCacheTrie.put(ZKPath.of(realPath), cache);
                 ZKActionMonitor.getInstance().triggerAction(ZKActionType.ADD_TREE_CACHE, this, realPath, null);
             }
             return cache;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -351,7 +1026,7 @@ public final class ZKClient {
 
         String realPath = getRealPath(path);
         TreeCache cache = getTreeCache(realPath);
-        cache.getListenable().addListener(listener);
+        addListener(cache.getListenable(), listener);
         ZKActionMonitor.getInstance().triggerAction(ZKActionType.ADD_CACHE_LISTENER, this, realPath, null);
         return cache;
     }
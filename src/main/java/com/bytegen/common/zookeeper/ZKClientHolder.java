@@ -2,17 +2,14 @@ package com.bytegen.common.zookeeper;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
-import org.apache.commons.lang3.tuple.Pair;
-import org.apache.curator.RetryPolicy;
+import org.apache.curator.ensemble.EnsembleProvider;
+import org.apache.curator.ensemble.fixed.FixedEnsembleProvider;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * User: xiang
@@ -22,11 +19,21 @@ import java.util.concurrent.atomic.AtomicInteger;
 class ZKClientHolder {
     private static final Logger logger = LoggerFactory.getLogger(ZKClientHolder.class);
 
-    private static final ConcurrentMap<String, Pair<CuratorFramework, AtomicInteger>> serverAuthClientMap = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ZKConnection> serverAuthClientMap = new ConcurrentHashMap<>();
 
-    private static final int SESSION_TIMEOUT = 30000;
-    private static final int CONNECTION_TIMEOUT = 30000;
-    private static final RetryPolicy DEFAULT_RETRY_POLICY = new ExponentialBackoffRetry(1000, 5);
+    /**
+     * Replaceable servers of environment connections, by the servers first resolved
+     */
+    private static final ConcurrentMap<String, ZKEnsembleProvider> ensembleProviderMap = new ConcurrentHashMap<>();
+
+    private static volatile ZKConnectionFactory connectionFactory = ZKCuratorConnectionFactory.DEFAULT;
+
+    /**
+     * Factory of connections created afterwards, null for the default one.
+     */
+    static void setConnectionFactory(ZKConnectionFactory factory) {
+        connectionFactory = null == factory ? ZKCuratorConnectionFactory.DEFAULT : factory;
+    }
 
     private static String serverAuthKey(String server, String auth) {
         Validate.notBlank(server, "Server is blank");
@@ -36,47 +43,56 @@ class ZKClientHolder {
         return server + "-->" + auth;
     }
 
-    static synchronized void tryCreateClient(String server, String auth) {
-        String key = serverAuthKey(server, auth);
-        if (serverAuthClientMap.get(key) == null) {
-            Validate.notBlank(server, "Zk server is blank");
-
-            CuratorFramework client = newClient(server, auth, SESSION_TIMEOUT, CONNECTION_TIMEOUT);
-            serverAuthClientMap.put(key, Pair.of(client, new AtomicInteger(0)));
-        }
-        serverAuthClientMap.get(key).getValue().incrementAndGet();
-        logger.info("Server [{}] auth [****] client count [{}] after create",
-                server, serverAuthClientMap.get(key).getValue().get());
+    /**
+     * Ensemble provider used by the connections of the server created afterwards, to swap their servers.
+     */
+    static ZKEnsembleProvider getEnsembleProvider(String server) {
+        Validate.notBlank(server, "Server is blank");
+        return ensembleProviderMap.computeIfAbsent(server, ZKEnsembleProvider::new);
     }
 
-    static synchronized void tryCloseClient(String server, String auth) {
+    /**
+     * Get the shared connection of the server and auth, creating and starting it if missing.
+     * Reference counting is atomic per key, and the connection is started outside the map,
+     * so clients of different servers never wait for each other.
+     */
+    static ZKConnection tryCreateClient(String server, String auth) {
         String key = serverAuthKey(server, auth);
-        Pair<CuratorFramework, AtomicInteger> clientPair = serverAuthClientMap.get(key);
-        if (clientPair != null) {
-            logger.info("Server [{}] auth [****] client count [{}] before close",
-                    server, serverAuthClientMap.get(key).getValue().get());
-            if (clientPair.getValue().decrementAndGet() == 0) {
-                clientPair.getKey().close();
-                serverAuthClientMap.remove(key);
+        int[] count = new int[1];
+        ZKConnection connection = serverAuthClientMap.compute(key, (k, existing) -> {
+            if (existing == null) {
+                existing = new ZKConnection(k, server, newClient(server, auth));
             }
-        }
-    }
-
-    static CuratorFramework getClient(String server, String auth) {
-        String key = serverAuthKey(server, auth);
-        return serverAuthClientMap.get(key).getKey();
+            count[0] = existing.retain();
+            return existing;
+        });
+        connection.start();
+        logger.info("Server [{}] auth [****] client count [{}] after create", server, count[0]);
+        return connection;
     }
 
-    private static CuratorFramework newClient(String server, String auth, int sessionTimeout, int connectionTimeout) {
-        CuratorFrameworkFactory.Builder builder = CuratorFrameworkFactory.builder().connectString(server)
-                .sessionTimeoutMs(sessionTimeout)
-                .connectionTimeoutMs(connectionTimeout)
-                .retryPolicy(DEFAULT_RETRY_POLICY);
-        if (null != auth) {
-            builder.authorization("digest", auth.getBytes());
+    /**
+     * Release the connection, closing it when no client uses it any more.
+     */
+    static void tryCloseClient(ZKConnection connection) {
+        int[] count = new int[]{-1};
+        serverAuthClientMap.computeIfPresent(connection.getKey(), (k, existing) -> {
+            if (existing != connection) {
+                return existing;
+            }
+            count[0] = existing.release();
+            return count[0] == 0 ? null : existing;
+        });
+        logger.info("Server [{}] auth [****] client count [{}] after close", connection.getServer(), Math.max(count[0], 0));
+        if (count[0] == 0) {
+            connection.close();
         }
+    }
 
-        CuratorFramework client = builder.build();
+    private static CuratorFramework newClient(String server, String auth) {
+        EnsembleProvider ensembleProvider = ensembleProviderMap.get(server);
+        CuratorFramework client = connectionFactory.newFramework(
+                null == ensembleProvider ? new FixedEnsembleProvider(server) : ensembleProvider, auth);
         client.getConnectionStateListenable().addListener((client1, newState) -> {
             switch (newState) {
                 case CONNECTED:
@@ -96,7 +112,6 @@ class ZKClientHolder {
                     break;
             }
         });
-        client.start();
         return client;
     }
 
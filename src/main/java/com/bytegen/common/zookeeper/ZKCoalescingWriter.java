@@ -0,0 +1,257 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+import com.bytegen.common.zookeeper.serializer.ZKDataSerializer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Last-writer-wins write buffer. Writes to the same path within one interval are
+ * coalesced so only the latest value is sent; dirty paths are flushed together as multi-ops.
+ * Futures of superseded writes complete with the outcome of the write that replaced them.
+ */
+public final class ZKCoalescingWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZKCoalescingWriter.class);
+
+    /**
+     * Keep each multi-op well below the default jute.maxbuffer (1M).
+     */
+    private static final int MAX_BATCH_OPS = 100;
+    private static final int MAX_BATCH_BYTES = 512 * 1024;
+
+    private final ZKClient client;
+    private final ConcurrentMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushExecutor;
+    /**
+     * One flush at a time, so an older value of a path can't be written after a newer one
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    private volatile boolean closed;
+
+    ZKCoalescingWriter(ZKClient client, long interval, TimeUnit unit) {
+        Validate.isTrue(interval > 0, "Flush interval must be positive.");
+        this.client = client;
+
+        ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("zookeeper-coalescing-writer-thread-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(
+                        (t, e) -> logger.error(String.format("Zookeeper coalescing writer, thread[%s] throw : ", t.getName()), e))
+                .build();
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(namedThreadFactory);
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, interval, interval, unit);
+    }
+
+    /**
+     * Buffer a set data of an existing node.
+     */
+    public <T> CompletableFuture<Void> setData(final String path, final T data, final ZKDataSerializer<T> serializer) {
+        return submit(path, data, serializer, false);
+    }
+
+    /**
+     * Buffer a create of persistent node, or set data if it exists.
+     */
+    public <T> CompletableFuture<Void> createPersistentOrSetData(final String path, final T data,
+                                                                 final ZKDataSerializer<T> serializer) {
+        return submit(path, data, serializer, true);
+    }
+
+    /**
+     * Writes buffered in total.
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Writes actually sent to zookeeper.
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    private <T> CompletableFuture<Void> submit(final String path, final T data, final ZKDataSerializer<T> serializer,
+                                               final boolean createIfMissing) {
+        Validate.notNull(data, "Data can't be null.");
+        Validate.validState(!closed, "Coalescing writer is closed.");
+
+        String realPath = client.getRealPath(path);
+        byte[] nodeData = serializer.serialize(data);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        pendingWrites.compute(realPath, (key, pending) -> {
+            if (null == pending) {
+                pending = new PendingWrite();
+            }
+            pending.data = nodeData;
+            // a coalesced set data must not drop the create an earlier caller asked for
+            pending.createIfMissing |= createIfMissing;
+            pending.futures.add(future);
+            return pending;
+        });
+        submitted.incrementAndGet();
+        if (closed) {
+            // close raced with this submit and may have flushed before the write was buffered
+            flush();
+        }
+        return future;
+    }
+
+    /**
+     * Send all buffered writes now.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        List<String> batchPaths = new ArrayList<>();
+        List<PendingWrite> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (String realPath : pendingWrites.keySet()) {
+            PendingWrite pending = pendingWrites.remove(realPath);
+            if (null == pending) {
+                continue;
+            }
+            if (!batch.isEmpty() && (batch.size() >= MAX_BATCH_OPS || batchBytes + pending.data.length > MAX_BATCH_BYTES)) {
+                writeBatch(batchPaths, batch);
+                batchPaths = new ArrayList<>();
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batchPaths.add(realPath);
+            batch.add(pending);
+            batchBytes += pending.data.length;
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batchPaths, batch);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Zookeeper coalescing writer flush failed.", e);
+        }
+    }
+
+    private void writeBatch(List<String> realPaths, List<PendingWrite> batch) {
+        // permits already paid by the multi-op cover the one by one fallback
+        boolean permitted = false;
+        if (batch.size() > 1) {
+            try {
+                for (String realPath : realPaths) {
+                    client.acquirePermit(ZKActionType.SET_DATA, realPath);
+                }
+                permitted = true;
+                List<CuratorOp> ops = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    ops.add(client.getFramework().transactionOp().setData()
+                            .forPath(realPaths.get(i), batch.get(i).data));
+                }
+                client.getFramework().transaction().forOperations(ops);
+                for (int i = 0; i < batch.size(); i++) {
+                    complete(realPaths.get(i), batch.get(i), ZKActionType.SET_DATA);
+                }
+                return;
+            } catch (KeeperException.NoNodeException e) {
+                // some node has to be created first, or was deleted; fall back to one write per path
+                logger.debug("Coalesced multi-op failed, write paths one by one: {}", e.getMessage());
+            } catch (Exception e) {
+                for (PendingWrite pending : batch) {
+                    pending.fail(e);
+                }
+                return;
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            String realPath = realPaths.get(i);
+            PendingWrite pending = batch.get(i);
+            try {
+                if (!permitted) {
+                    client.acquirePermit(pending.createIfMissing ? ZKActionType.UPDATE_PERSISTENT : ZKActionType.SET_DATA, realPath);
+                }
+                if (pending.createIfMissing) {
+                    client.getFramework().create().orSetData().creatingParentsIfNeeded()
+                            .withMode(CreateMode.PERSISTENT).forPath(realPath, pending.data);
+                    complete(realPath, pending, ZKActionType.UPDATE_PERSISTENT);
+                } else {
+                    client.getFramework().setData().forPath(realPath, pending.data);
+                    complete(realPath, pending, ZKActionType.SET_DATA);
+                }
+            } catch (Exception e) {
+                pending.fail(e);
+            }
+        }
+    }
+
+    private void complete(String realPath, PendingWrite pending, ZKActionType type) {
+        written.incrementAndGet();
+        client.markWritten(realPath);
+        ZKActionMonitor.getInstance().triggerAction(type, client, realPath, pending.data);
+        for (CompletableFuture<Void> future : pending.futures) {
+            future.complete(null);
+        }
+    }
+
+    /**
+     * Flush the remaining writes and stop the flush thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static class PendingWrite {
+        private byte[] data;
+        private boolean createIfMissing;
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>(1);
+
+        private void fail(Exception e) {
+            for (CompletableFuture<Void> future : futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.limit.ZKWatchBudget;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: One shared CuratorFramework of a server and auth, with the number of ZKClients using it
+ * and the watches set by their caches.
+ */
+final class ZKConnection {
+
+    private final String key;
+    private final String server;
+    private final CuratorFramework framework;
+    private final CompletableFuture<Void> connectedFuture = new CompletableFuture<>();
+
+    /**
+     * Only changed inside the compute of the holder map
+     */
+    private int references;
+
+    private final ReentrantLock startLock = new ReentrantLock();
+    private volatile boolean started;
+
+    /**
+     * Watches of the caches of all clients sharing the connection, and their budget
+     */
+    private final ZKWatchTracker watchTracker = new ZKWatchTracker();
+    private volatile ZKWatchBudget watchBudget;
+
+    ZKConnection(String key, String server, CuratorFramework framework) {
+        this.key = key;
+        this.server = server;
+        this.framework = framework;
+        framework.getConnectionStateListenable().addListener((client, newState) -> {
+            if (newState == ConnectionState.CONNECTED || newState == ConnectionState.RECONNECTED
+                    || newState == ConnectionState.READ_ONLY) {
+                connectedFuture.complete(null);
+            }
+        });
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getServer() {
+        return server;
+    }
+
+    CuratorFramework getFramework() {
+        return framework;
+    }
+
+    /**
+     * Completed once the first connection is established.
+     */
+    CompletableFuture<Void> getConnectedFuture() {
+        return connectedFuture;
+    }
+
+    ZKWatchTracker getWatchTracker() {
+        return watchTracker;
+    }
+
+    ZKWatchBudget getWatchBudget() {
+        return watchBudget;
+    }
+
+    void setWatchBudget(ZKWatchBudget watchBudget) {
+        this.watchBudget = watchBudget;
+    }
+
+    int retain() {
+        return ++references;
+    }
+
+    int release() {
+        return --references;
+    }
+
+    /**
+     * Start the framework once. Curator connects in background, so this does not wait for the connection.
+     */
+    void start() {
+        if (started) {
+            return;
+        }
+        startLock.lock();
+        try {
+            if (!started) {
+                framework.start();
+                started = true;
+            }
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    /**
+     * Close the framework; a start racing with the last release becomes a no-op.
+     */
+    void close() {
+        startLock.lock();
+        try {
+            started = true;
+            framework.close();
+        } finally {
+            startLock.unlock();
+        }
+        connectedFuture.completeExceptionally(new IllegalStateException("Zookeeper connection closed: " + server));
+    }
+}
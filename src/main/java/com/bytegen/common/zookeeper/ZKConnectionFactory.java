@@ -0,0 +1,19 @@
+package com.bytegen.common.zookeeper;
+
+import org.apache.curator.ensemble.EnsembleProvider;
+import org.apache.curator.framework.CuratorFramework;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Build the CuratorFramework of an ensemble and auth, plugged by {@link ZKFacade#setConnectionFactory},
+ * e.g. to connect tests to an embedded server with short timeouts.
+ */
+public interface ZKConnectionFactory {
+
+    /**
+     * @param ensembleProvider servers to connect, which may change for environment clients, see {@link ZKFacade#watchSettingsFile}
+     * @return a framework not started yet; the client holder starts it and closes it when unused
+     */
+    CuratorFramework newFramework(EnsembleProvider ensembleProvider, String auth);
+}
@@ -0,0 +1,49 @@
+package com.bytegen.common.zookeeper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.ensemble.EnsembleProvider;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Connection factory building a plain CuratorFramework with digest auth.
+ */
+public class ZKCuratorConnectionFactory implements ZKConnectionFactory {
+
+    private static final int SESSION_TIMEOUT = 30000;
+    private static final int CONNECTION_TIMEOUT = 30000;
+
+    static final ZKCuratorConnectionFactory DEFAULT = new ZKCuratorConnectionFactory(
+            SESSION_TIMEOUT, CONNECTION_TIMEOUT, new ExponentialBackoffRetry(1000, 5));
+
+    private final int sessionTimeout;
+    private final int connectionTimeout;
+    private final RetryPolicy retryPolicy;
+
+    public ZKCuratorConnectionFactory(int sessionTimeout, int connectionTimeout, RetryPolicy retryPolicy) {
+        Validate.isTrue(sessionTimeout > 0, "Session timeout must be positive.");
+        Validate.isTrue(connectionTimeout > 0, "Connection timeout must be positive.");
+        Validate.notNull(retryPolicy, "Retry policy can't be null.");
+        this.sessionTimeout = sessionTimeout;
+        this.connectionTimeout = connectionTimeout;
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public CuratorFramework newFramework(EnsembleProvider ensembleProvider, String auth) {
+        CuratorFrameworkFactory.Builder builder = CuratorFrameworkFactory.builder().ensembleProvider(ensembleProvider)
+                .sessionTimeoutMs(sessionTimeout)
+                .connectionTimeoutMs(connectionTimeout)
+                .retryPolicy(retryPolicy);
+        // blank auth means none, as in the holder key
+        if (StringUtils.isNotBlank(auth)) {
+            builder.authorization("digest", auth.getBytes());
+        }
+        return builder.build();
+    }
+}
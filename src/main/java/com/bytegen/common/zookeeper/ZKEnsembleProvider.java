@@ -0,0 +1,53 @@
+package com.bytegen.common.zookeeper;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.ensemble.EnsembleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Ensemble provider whose servers can be replaced while connections use it.
+ * Curator picks the new servers up at the next connection check; zookeeper 3.4 can't update the server list
+ * of a live handle, so curator opens a new session on the new servers then, keeping the framework and its caches.
+ */
+final class ZKEnsembleProvider implements EnsembleProvider {
+    private static final Logger logger = LoggerFactory.getLogger(ZKEnsembleProvider.class);
+
+    private volatile String connectionString;
+
+    ZKEnsembleProvider(String connectionString) {
+        Validate.notBlank(connectionString, "Connection string is blank");
+        this.connectionString = connectionString;
+    }
+
+    @Override
+    public void start() {
+        // Nothing
+    }
+
+    @Override
+    public String getConnectionString() {
+        return connectionString;
+    }
+
+    @Override
+    public void setConnectionString(String connectionString) {
+        Validate.notBlank(connectionString, "Connection string is blank");
+        if (!connectionString.equals(this.connectionString)) {
+            logger.info("Zookeeper servers changed from [{}] to [{}]", this.connectionString, connectionString);
+            this.connectionString = connectionString;
+        }
+    }
+
+    @Override
+    public boolean updateServerListEnabled() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // Nothing
+    }
+}
@@ -0,0 +1,86 @@
+package com.bytegen.common.zookeeper;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Threads of the client. On JDK 21+ with {@link #VIRTUAL_THREADS_PROPERTY} set to true, threads are virtual:
+ * blocking operations are dispatched on an unbounded pool of virtual threads, and cache listeners leave the
+ * event thread. Only the thread factory differs between JDK versions, see {@link ZKVirtualThreads}.
+ * <p>
+ * The zookeeper 3.4 client still blocks in synchronized/wait inside ClientCnxn, which pins the carrier thread.
+ * The JDK compensates with extra carriers only up to jdk.virtualThreadScheduler.maxPoolSize (256 by default), so
+ * virtual threads do not make thousands of concurrent blocking operations possible; they mainly save thread stacks
+ * for callers which wait on the returned futures.
+ */
+public final class ZKExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(ZKExecutors.class);
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "zookeeper.virtualThreads";
+
+    private static final int DISPATCH_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final boolean virtualThreads =
+            Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) && ZKVirtualThreads.isSupported();
+
+    private static final ExecutorService dispatchExecutor = virtualThreads
+            ? Executors.newCachedThreadPool(newThreadFactory("zookeeper-dispatch-thread-%d", true))
+            : Executors.newFixedThreadPool(DISPATCH_THREADS, newThreadFactory("zookeeper-dispatch-thread-%d", true));
+
+    private ZKExecutors() {
+    }
+
+    /**
+     * Whether the threads created here are virtual threads.
+     */
+    public static boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Thread factory of named threads which log uncaught exceptions. Virtual threads are always daemon.
+     */
+    public static ThreadFactory newThreadFactory(String nameFormat, boolean daemon) {
+        Thread.UncaughtExceptionHandler handler =
+                (t, e) -> logger.error(String.format("Zookeeper thread[%s] throw : ", t.getName()), e);
+        ThreadFactory virtualFactory = virtualThreads
+                ? ZKVirtualThreads.newThreadFactory(nameFormat.replace("%d", ""), handler) : null;
+        if (null != virtualFactory) {
+            return virtualFactory;
+        }
+        return new ThreadFactoryBuilder()
+                .setNameFormat(nameFormat)
+                .setDaemon(daemon)
+                .setUncaughtExceptionHandler(handler)
+                .build();
+    }
+
+    /**
+     * Executor running tasks one by one in submission order.
+     */
+    public static ExecutorService newSerialExecutor(String nameFormat, boolean daemon) {
+        return Executors.newSingleThreadExecutor(newThreadFactory(nameFormat, daemon));
+    }
+
+    /**
+     * Executor for cache listener callbacks, or null to keep the curator default of running them on the event thread.
+     * With virtual threads listeners may block without holding the event thread, still in event order.
+     */
+    static ExecutorService newListenerExecutor() {
+        return virtualThreads ? newSerialExecutor("zookeeper-cache-listener-thread-%d", true) : null;
+    }
+
+    /**
+     * Shared executor running blocking client operations, see {@link ZKClient#dispatch}.
+     */
+    static ExecutorService getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+}
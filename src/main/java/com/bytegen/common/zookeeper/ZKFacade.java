@@ -1,10 +1,14 @@
 package com.bytegen.common.zookeeper;
 
+import com.bytegen.common.zookeeper.limit.ZKRateLimiter;
+import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * User: xiang
@@ -14,26 +18,72 @@ import java.util.Map;
 public class ZKFacade {
     private static Logger logger = LoggerFactory.getLogger(ZKFacade.class);
 
-    private static final ZKEnvironmentSetting currentEnvironmentSetting = new ZKEnvironmentSetting();
+    private static final ZKSettingsRegistry settingsRegistry = new ZKSettingsRegistry();
 
     /**
-     * Only environment default setting will be cached in the map
+     * Rate limiters shared by the clients of each environment
      */
-    private static final Map<String, ZKEnvironmentSetting> environmentSettingMap = new HashMap<>();
+    private static final Map<String, ZKRateLimiter> environmentRateLimiterMap = new ConcurrentHashMap<>();
 
     public static ZKClient getClient() {
-        ZKEnvironmentSetting setting = environmentSettingMap
-                .computeIfAbsent(currentEnvironmentSetting.getZKEnvironment(), env -> currentEnvironmentSetting);
-        return new ZKClient(setting.getZKEnvironment(), setting.getZKServer(), setting.getZKAuth());
+        return newEnvironmentClient(settingsRegistry.getSetting());
     }
 
     public static ZKClient getClient(String environment) {
-        ZKEnvironmentSetting setting = environmentSettingMap
-                .computeIfAbsent(environment, env -> new ZKEnvironmentSetting(environment));
-        return new ZKClient(setting.getZKEnvironment(), setting.getZKServer(), setting.getZKAuth());
+        return newEnvironmentClient(settingsRegistry.getSetting(environment));
+    }
+
+    /**
+     * Set the rate limiter applied to clients got for the environment afterwards, null to remove it.
+     */
+    public static void setRateLimiter(String environment, ZKRateLimiter rateLimiter) {
+        Validate.notBlank(environment, "Environment is blank");
+        if (null == rateLimiter) {
+            environmentRateLimiterMap.remove(environment.toUpperCase());
+        } else {
+            environmentRateLimiterMap.put(environment.toUpperCase(), rateLimiter);
+        }
+    }
+
+    /**
+     * Watch an external properties file, polled every interval; "${environment}.zookeeper.server" in it
+     * overrides the configured servers and is swapped into open clients of the environment.
+     */
+    public static void watchSettingsFile(File file, long interval, TimeUnit unit) {
+        settingsRegistry.watchFile(file, interval, unit);
+    }
+
+    /**
+     * Watch a Properties znode of the bootstrap client, the same as {@link #watchSettingsFile}.
+     */
+    public static void watchSettingsNode(ZKClient bootstrap, String path) throws Exception {
+        settingsRegistry.watchNode(bootstrap, path);
+    }
+
+    /**
+     * Set the factory of connections created afterwards, null to restore the default one.
+     * Connections already shared by open clients are kept until they are closed.
+     */
+    public static void setConnectionFactory(ZKConnectionFactory connectionFactory) {
+        ZKClientHolder.setConnectionFactory(connectionFactory);
+    }
+
+    private static ZKClient newEnvironmentClient(ZKEnvironmentSetting setting) {
+        ZKClient client = new ZKClient(setting.getZKEnvironment(), setting.getZKServer(), setting.getZKAuth(),
+                setting.getZKNamespace());
+        client.setRateLimiter(environmentRateLimiterMap.get(setting.getZKEnvironment().toUpperCase()));
+        return client;
     }
 
     public static ZKClient getClient(String server, String auth) {
         return new ZKClient("", server, auth);
     }
+
+    /**
+     * Get a client scoped to the namespace; clients of the same server and auth share one connection
+     * whatever their namespaces.
+     */
+    public static ZKClient getClient(String server, String auth, String namespace) {
+        return new ZKClient("", server, auth, namespace);
+    }
 }
@@ -0,0 +1,11 @@
+package com.bytegen.common.zookeeper;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Blocking operation on a client, run by {@link ZKClient#dispatch}.
+ */
+public interface ZKOperation<V> {
+
+    V execute(ZKClient client) throws Exception;
+}
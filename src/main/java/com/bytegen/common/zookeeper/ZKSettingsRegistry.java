@@ -0,0 +1,186 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.serializer.PropertiesSerializer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Concurrent registry of environment settings. Classpath files are loaded once; an external file or a
+ * bootstrap znode can be watched, overriding "${environment}.zookeeper.server" and swapping servers live.
+ * A value is looked up in order from:
+ * 1. watched sources, in registration order
+ * 2. {@link System} properties
+ * 3. file "/zookeeper.properties"
+ * 4. file DEFAULT_ZOOKEEPER_SERVER_FILE, for servers only
+ */
+final class ZKSettingsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ZKSettingsRegistry.class);
+
+    private static final String ZOOKEEPER_PROPERTIES_FILE = "zookeeper.properties";
+    private static final String DEFAULT_ZOOKEEPER_SERVER_FILE = "zookeeper_servers.properties";
+    private static final String ENVIRONMENT_KEY = "zookeeper.env";
+
+    private final Properties properties;
+    private final Properties defaultServers;
+    /**
+     * Watched sources in registration order, their properties replaced as a whole on change
+     */
+    private final List<WatchedSource> watchedSources = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, ZKEnvironmentSetting> settings = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService watchExecutor;
+
+    ZKSettingsRegistry() {
+        this.properties = loadResource(ZOOKEEPER_PROPERTIES_FILE);
+        this.defaultServers = loadResource(DEFAULT_ZOOKEEPER_SERVER_FILE);
+    }
+
+    /**
+     * Setting of the environment currently used, from property "zookeeper.env".
+     */
+    ZKEnvironmentSetting getSetting() {
+        String environment = getValue(ENVIRONMENT_KEY);
+        Validate.notEmpty(environment, "ZK environment not found.");
+        return getSetting(environment.toUpperCase());
+    }
+
+    ZKEnvironmentSetting getSetting(String environment) {
+        Validate.notEmpty(environment, "ZK environment not found.");
+        return settings.computeIfAbsent(environment, env -> new ZKEnvironmentSetting(env, this));
+    }
+
+    String getValue(String key) {
+        for (WatchedSource source : watchedSources) {
+            String value = source.properties.getProperty(key);
+            if (StringUtils.isNotBlank(value)) {
+                return value;
+            }
+        }
+        String value = System.getProperty(key);
+        if (StringUtils.isNotBlank(value)) {
+            return value;
+        }
+        value = properties.getProperty(key);
+        return StringUtils.isNotBlank(value) ? value : null;
+    }
+
+    String getServerValue(String environment) {
+        String key = environment + ".zookeeper.server";
+        String value = getValue(key);
+        if (null == value) {
+            value = StringUtils.trimToNull(defaultServers.getProperty(key));
+        }
+        return value;
+    }
+
+    /**
+     * Poll the properties file, applying its servers whenever it changes. A missing file overrides nothing.
+     */
+    void watchFile(File file, long interval, TimeUnit unit) {
+        Validate.notNull(file, "Settings file can't be null.");
+        Validate.isTrue(interval > 0, "Watch interval must be positive.");
+
+        WatchedSource source = addSource("file:" + file.getAbsolutePath());
+        long[] lastModified = new long[]{Long.MIN_VALUE};
+        Runnable poll = () -> {
+            long modified = file.lastModified();
+            if (modified == lastModified[0]) {
+                return;
+            }
+            lastModified[0] = modified;
+            try {
+                update(source, file.exists() ? loadFile(file) : new Properties());
+            } catch (IOException e) {
+                logger.error("Load zookeeper settings failed: " + file, e);
+            }
+        };
+        poll.run();
+        getWatchExecutor().scheduleWithFixedDelay(poll, interval, interval, unit);
+    }
+
+    /**
+     * Watch a Properties znode of the bootstrap client, applying its servers whenever it changes.
+     */
+    void watchNode(ZKClient bootstrap, String path) throws Exception {
+        Validate.notNull(bootstrap, "Bootstrap client can't be null.");
+        Validate.notBlank(path, "Settings path can't be blank.");
+
+        WatchedSource source = addSource("znode:" + bootstrap.getServer() + bootstrap.getRealPath(path));
+        bootstrap.addNodeContentListener(path, PropertiesSerializer.getInstance(),
+                (changedPath, oldData, newData) -> update(source, null == newData ? new Properties() : newData));
+        if (bootstrap.exists(path)) {
+            update(source, bootstrap.getData(path, PropertiesSerializer.getInstance()));
+        }
+    }
+
+    private WatchedSource addSource(String name) {
+        WatchedSource source = new WatchedSource(name);
+        watchedSources.add(source);
+        return source;
+    }
+
+    private void update(WatchedSource source, Properties properties) {
+        source.properties = properties;
+        logger.info("Zookeeper settings updated from {}", source.name);
+        for (ZKEnvironmentSetting setting : settings.values()) {
+            setting.refresh(this);
+        }
+    }
+
+    /**
+     * Created on the first file watch only
+     */
+    private synchronized ScheduledExecutorService getWatchExecutor() {
+        if (null == watchExecutor) {
+            watchExecutor = Executors.newSingleThreadScheduledExecutor(
+                    ZKExecutors.newThreadFactory("zookeeper-settings-watch-thread-%d", true));
+        }
+        return watchExecutor;
+    }
+
+    private static Properties loadFile(File file) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            Properties properties = new Properties();
+            properties.load(stream);
+            return properties;
+        }
+    }
+
+    private static Properties loadResource(String name) {
+        Properties properties = new Properties();
+        try (InputStream stream = ZKSettingsRegistry.class.getResourceAsStream("/" + name)) {
+            if (null != stream) {
+                properties.load(stream);
+            }
+        } catch (IOException e) {
+            logger.error("load properties from resources failed: " + name, e);
+        }
+        return properties;
+    }
+
+    private static final class WatchedSource {
+        private final String name;
+        private volatile Properties properties = new Properties();
+
+        private WatchedSource(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.bytegen.common.zookeeper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Collapse concurrent identical reads into one request whose result is shared by all waiters.
+ * The caller which issues the request keeps the loaded value; whoever joins it gets a copy,
+ * so callers never share mutable results. After a write the owner calls {@link #forget}, so a read
+ * starting after the write never joins a load which started before it.
+ */
+final class ZKSingleFlight<V> {
+
+    private final ConcurrentMap<String, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> copier;
+
+    ZKSingleFlight(UnaryOperator<V> copier) {
+        this.copier = copier;
+    }
+
+    /**
+     * Load the value of the key, or wait for the load already in flight.
+     */
+    V execute(String key, Callable<V> loader) throws Exception {
+        while (true) {
+            Flight<V> flight = flights.get(key);
+            if (null == flight) {
+                Flight<V> mine = new Flight<>();
+                flight = flights.putIfAbsent(key, mine);
+                if (null == flight) {
+                    return lead(key, mine, loader);
+                }
+            }
+            if (flight.join()) {
+                return await(flight);
+            }
+            // the flight just landed, start or join a new one
+        }
+    }
+
+    /**
+     * Start loading the value of the key in background, or join the load already in flight.
+     */
+    CompletableFuture<V> executeAsync(String key, AsyncLoader<V> loader) {
+        while (true) {
+            Flight<V> flight = flights.get(key);
+            if (null == flight) {
+                Flight<V> mine = new Flight<>();
+                flight = flights.putIfAbsent(key, mine);
+                if (null == flight) {
+                    return leadAsync(key, mine, loader);
+                }
+            }
+            if (flight.join()) {
+                return flight.future.thenApply(this::copy);
+            }
+        }
+    }
+
+    /**
+     * Let later callers start new loads of the key and of the keys below it, as path keys. Callers which
+     * joined a load already keep waiting for it.
+     */
+    void forget(String path) {
+        if (flights.isEmpty()) {
+            return;
+        }
+        String prefix = path.endsWith("/") ? path : path + "/";
+        flights.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+    }
+
+    /**
+     * Let later callers start a new load of the key only.
+     */
+    void forgetKey(String key) {
+        flights.remove(key);
+    }
+
+    private V lead(String key, Flight<V> flight, Callable<V> loader) throws Exception {
+        V value;
+        try {
+            value = loader.call();
+        } catch (Throwable e) {
+            // errors too, or followers and later callers of the key would wait forever
+            flights.remove(key, flight);
+            flight.seal();
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+        flights.remove(key, flight);
+        boolean shared = !flight.seal();
+        flight.future.complete(value);
+        return shared ? copy(value) : value;
+    }
+
+    private CompletableFuture<V> leadAsync(String key, Flight<V> flight, AsyncLoader<V> loader) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> loaded = new CompletableFuture<>();
+        loaded.whenComplete((value, error) -> {
+            flights.remove(key, flight);
+            boolean shared = !flight.seal();
+            if (null != error) {
+                flight.future.completeExceptionally(error);
+                result.completeExceptionally(error);
+            } else {
+                flight.future.complete(value);
+                result.complete(shared ? copy(value) : value);
+            }
+        });
+        try {
+            loader.load(loaded);
+        } catch (Throwable e) {
+            loaded.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private V await(Flight<V> flight) throws Exception {
+        try {
+            return copy(flight.future.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private V copy(V value) {
+        return null == value ? null : copier.apply(value);
+    }
+
+    interface AsyncLoader<V> {
+        /**
+         * Start the load, which completes the given future.
+         */
+        void load(CompletableFuture<V> loaded) throws Exception;
+    }
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        /**
+         * Number of joined waiters, -1 once sealed
+         */
+        private final AtomicInteger followers = new AtomicInteger();
+
+        private boolean join() {
+            while (true) {
+                int count = followers.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (followers.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Stop accepting waiters.
+         *
+         * @return true if nobody joined
+         */
+        private boolean seal() {
+            return followers.getAndSet(-1) == 0;
+        }
+    }
+}
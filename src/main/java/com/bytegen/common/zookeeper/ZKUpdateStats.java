@@ -0,0 +1,69 @@
+package com.bytegen.common.zookeeper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Counters of optimistic-concurrency updates made by {@link ZKClient#update}.
+ */
+public final class ZKUpdateStats {
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong cacheReads = new AtomicLong();
+
+    ZKUpdateStats() {
+    }
+
+    void recordUpdate() {
+        updates.incrementAndGet();
+    }
+
+    void recordConflict() {
+        conflicts.incrementAndGet();
+    }
+
+    void recordExhausted() {
+        exhausted.incrementAndGet();
+    }
+
+    void recordCacheRead() {
+        cacheReads.incrementAndGet();
+    }
+
+    /**
+     * Updates committed successfully.
+     */
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * Writes rejected because the node changed since it was read; each one caused a retry.
+     */
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    /**
+     * Updates given up after running out of retries.
+     */
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * Reads served by a local cache instead of a round trip.
+     */
+    public long getCacheReads() {
+        return cacheReads.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ZKUpdateStats{updates=" + getUpdates() + ", conflicts=" + getConflicts()
+                + ", exhausted=" + getExhausted() + ", cacheReads=" + getCacheReads() + "}";
+    }
+}
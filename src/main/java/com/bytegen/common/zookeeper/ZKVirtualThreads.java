@@ -0,0 +1,26 @@
+package com.bytegen.common.zookeeper;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Virtual thread factory used by {@link ZKExecutors}. Virtual threads need JDK 21, so this version has no
+ * factory and the callers fall back to platform threads; the multi-release jar replaces it on JDK 21+.
+ */
+final class ZKVirtualThreads {
+
+    private ZKVirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @return null, virtual threads need JDK 21+
+     */
+    static ThreadFactory newThreadFactory(String namePrefix, Thread.UncaughtExceptionHandler handler) {
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.limit.ZKWatchBudget;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Watches set by the caches of one connection. Caches on overlapping paths are counted each,
+ * so the total is an upper bound of the watches the server keeps for the session.
+ */
+public final class ZKWatchSnapshot {
+
+    public enum CacheType {
+        NODE,
+        PATH_CHILDREN,
+        TREE,
+    }
+
+    private final long totalWatches;
+    private final ZKWatchBudget budget;
+    private final List<CacheWatches> caches;
+
+    ZKWatchSnapshot(long totalWatches, ZKWatchBudget budget, List<CacheWatches> caches) {
+        this.totalWatches = totalWatches;
+        this.budget = budget;
+        this.caches = Collections.unmodifiableList(caches);
+    }
+
+    public long getTotalWatches() {
+        return totalWatches;
+    }
+
+    /**
+     * Budget of the connection, null for none.
+     */
+    public ZKWatchBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Caches of all clients of the connection, the most watching first.
+     */
+    public List<CacheWatches> getCaches() {
+        return caches;
+    }
+
+    @Override
+    public String toString() {
+        return "ZKWatchSnapshot{totalWatches=" + totalWatches + ", budget=" + budget + ", caches=" + caches + "}";
+    }
+
+    public static final class CacheWatches {
+        private final CacheType type;
+        private final String path;
+        private final long watches;
+        private final int maxDepth;
+
+        CacheWatches(CacheType type, String path, long watches, int maxDepth) {
+            this.type = type;
+            this.path = path;
+            this.watches = watches;
+            this.maxDepth = maxDepth;
+        }
+
+        public CacheType getType() {
+            return type;
+        }
+
+        /**
+         * Path of the cache, namespace included.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public long getWatches() {
+            return watches;
+        }
+
+        /**
+         * Max depth of a tree cache degraded by the budget, otherwise Integer.MAX_VALUE.
+         */
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + path + " = " + watches
+                    + (maxDepth == Integer.MAX_VALUE ? "" : " (max depth " + maxDepth + ")");
+        }
+    }
+}
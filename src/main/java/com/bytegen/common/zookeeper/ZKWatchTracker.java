@@ -0,0 +1,282 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.limit.ZKWatchBudget;
+import com.bytegen.common.zookeeper.limit.ZKWatchBudgetExceededException;
+import com.bytegen.common.zookeeper.limit.ZKWatchBudgetMode;
+import com.bytegen.common.zookeeper.path.ZKPath;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Watches set by the caches of one connection, counted from the cache events. A node cache sets one watch,
+ * a path children cache one on the parent and one per child, a tree cache one per node and one more per node
+ * above its max depth. Until a cache is initialized its watches are taken as the estimate made on creation.
+ * <p>
+ * Caches are counted separately, so a node covered by two caches counts twice although zookeeper keeps one watch
+ * per path and kind per session; the totals are an upper bound of the watches on the server.
+ */
+final class ZKWatchTracker {
+
+    private final Set<Entry> entries = ConcurrentHashMap.newKeySet();
+    /**
+     * Serializes reservations including the reads of the tree, which must not pin virtual threads
+     */
+    private final ReentrantLock reserveLock = new ReentrantLock();
+
+    long getTotalWatches() {
+        long total = 0;
+        for (Entry entry : entries) {
+            total += entry.getWatches();
+        }
+        return total;
+    }
+
+    ZKWatchSnapshot snapshot(ZKWatchBudget budget) {
+        List<ZKWatchSnapshot.CacheWatches> caches = new ArrayList<>(entries.size());
+        long total = 0;
+        for (Entry entry : entries) {
+            long watches = entry.getWatches();
+            total += watches;
+            caches.add(new ZKWatchSnapshot.CacheWatches(entry.type, entry.path, watches, entry.maxDepth));
+        }
+        caches.sort((a, b) -> Long.compare(b.getWatches(), a.getWatches()));
+        return new ZKWatchSnapshot(total, budget, caches);
+    }
+
+    /**
+     * Check a node cache against the budget and count it.
+     */
+    Entry reserveNode(Object owner, String path, ZKWatchBudget budget) {
+        reserveLock.lock();
+        try {
+            if (null != budget && budget.getAllowance(getTotalWatches()) < 1) {
+                throw exceeded(ZKWatchSnapshot.CacheType.NODE, path, 1, budget);
+            }
+            Entry entry = new Entry(owner, ZKWatchSnapshot.CacheType.NODE, path, 0, Integer.MAX_VALUE, 1);
+            entry.counted.set(1);
+            entry.initialized = true;
+            entries.add(entry);
+            return entry;
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    /**
+     * Check a path children cache against the budget, reading the current number of children, and count it.
+     */
+    Entry reservePathChildren(Object owner, CuratorFramework framework, String realPath,
+                              String path, ZKWatchBudget budget) throws Exception {
+        reserveLock.lock();
+        try {
+            long estimate = 1;
+            if (null != budget) {
+                try {
+                    estimate += framework.getChildren().forPath(realPath).size();
+                } catch (KeeperException.NoNodeException e) {
+                    // only the parent is watched until it is created
+                }
+                if (estimate > budget.getAllowance(getTotalWatches())) {
+                    throw exceeded(ZKWatchSnapshot.CacheType.PATH_CHILDREN, path, estimate, budget);
+                }
+            }
+            Entry entry = new Entry(owner, ZKWatchSnapshot.CacheType.PATH_CHILDREN, path, 0, Integer.MAX_VALUE, estimate);
+            entry.counted.set(1);
+            entry.initialized = 1 == estimate;
+            entries.add(entry);
+            return entry;
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    /**
+     * Check a tree cache against the budget and count it. The tree is walked breadth first until its watches
+     * exceed the allowance; in DEGRADE mode the cache is then limited to the deepest level that still fits.
+     * The walk and the reservation hold one lock, so concurrent reservations can't both spend the same allowance.
+     */
+    Entry reserveTree(Object owner, CuratorFramework framework, String realPath,
+                      String path, ZKWatchBudget budget) throws Exception {
+        if (null == budget) {
+            Entry entry = new Entry(owner, ZKWatchSnapshot.CacheType.TREE, path,
+                    ZKPath.of(realPath).getDepth(), Integer.MAX_VALUE, 0);
+            entries.add(entry);
+            return entry;
+        }
+        reserveLock.lock();
+        try {
+            long allowance = budget.getAllowance(getTotalWatches());
+            List<Long> levels = countLevels(framework, realPath, allowance);
+            int maxDepth = Integer.MAX_VALUE;
+            long estimate = treeWatches(levels, Integer.MAX_VALUE);
+            if (estimate > allowance) {
+                if (budget.getMode() != ZKWatchBudgetMode.DEGRADE) {
+                    throw exceeded(ZKWatchSnapshot.CacheType.TREE, path, estimate, budget);
+                }
+                maxDepth = -1;
+                for (int depth = 0; depth < levels.size() && treeWatches(levels, depth) <= allowance; depth++) {
+                    maxDepth = depth;
+                }
+                if (maxDepth < 0) {
+                    throw exceeded(ZKWatchSnapshot.CacheType.TREE, path, treeWatches(levels, 0), budget);
+                }
+                estimate = treeWatches(levels, maxDepth);
+            }
+            Entry entry = new Entry(owner, ZKWatchSnapshot.CacheType.TREE, path,
+                    ZKPath.of(realPath).getDepth(), maxDepth, estimate);
+            entries.add(entry);
+            return entry;
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    void release(Entry entry) {
+        entries.remove(entry);
+    }
+
+    /**
+     * Stop counting the caches of a closed client.
+     */
+    void releaseAll(Object owner) {
+        entries.removeIf(entry -> entry.owner == owner);
+    }
+
+    /**
+     * Number of nodes per level, stopping at the first level whose watches exceed the limit.
+     */
+    private static List<Long> countLevels(CuratorFramework framework, String realPath, long limit) throws Exception {
+        List<Long> levels = new ArrayList<>();
+        if (null == framework.checkExists().forPath(realPath)) {
+            return levels;
+        }
+        List<String> frontier = new ArrayList<>();
+        frontier.add(realPath);
+        long watches = 0;
+        while (!frontier.isEmpty()) {
+            levels.add((long) frontier.size());
+            watches += 2L * frontier.size();
+            if (watches > limit) {
+                break;
+            }
+            List<String> next = new ArrayList<>();
+            for (String parent : frontier) {
+                try {
+                    for (String child : framework.getChildren().forPath(parent)) {
+                        next.add(ZKPaths.makePath(parent, child));
+                    }
+                } catch (KeeperException.NoNodeException e) {
+                    // deleted meanwhile
+                }
+            }
+            frontier = next;
+        }
+        return levels;
+    }
+
+    /**
+     * Watches of a tree cache limited to the depth: data and children watches above it, data watches at it.
+     */
+    private static long treeWatches(List<Long> levels, int maxDepth) {
+        if (levels.isEmpty()) {
+            // an exists watch on the missing root
+            return 1;
+        }
+        long watches = 0;
+        for (int depth = 0; depth < levels.size() && depth <= maxDepth; depth++) {
+            watches += (depth < maxDepth ? 2 : 1) * levels.get(depth);
+        }
+        return watches;
+    }
+
+    private static ZKWatchBudgetExceededException exceeded(ZKWatchSnapshot.CacheType type, String path, long watches,
+                                                           ZKWatchBudget budget) {
+        return new ZKWatchBudgetExceededException(String.format(
+                "%s cache of %s needs at least %d watches, exceeding %s", type, path, watches, budget));
+    }
+
+    /**
+     * Watches of one cache, updated by its events.
+     */
+    static final class Entry implements PathChildrenCacheListener, TreeCacheListener {
+        private final Object owner;
+        private final ZKWatchSnapshot.CacheType type;
+        private final String path;
+        private final int maxDepth;
+        private final long estimate;
+        private final AtomicLong counted = new AtomicLong();
+        private volatile boolean initialized;
+        /**
+         * Depth of the tree cache root, to find the depth of its nodes
+         */
+        private final int rootDepth;
+
+        private Entry(Object owner, ZKWatchSnapshot.CacheType type, String path, int rootDepth, int maxDepth, long estimate) {
+            this.owner = owner;
+            this.rootDepth = rootDepth;
+            this.type = type;
+            this.path = path;
+            this.maxDepth = maxDepth;
+            this.estimate = estimate;
+        }
+
+        int getMaxDepth() {
+            return maxDepth;
+        }
+
+        long getWatches() {
+            long watches = counted.get();
+            return initialized ? watches : Math.max(watches, estimate);
+        }
+
+        @Override
+        public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+            switch (event.getType()) {
+                case CHILD_ADDED:
+                    // started without the initialized event, so loaded once the children counted on creation arrived
+                    if (counted.incrementAndGet() >= estimate) {
+                        initialized = true;
+                    }
+                    break;
+                case CHILD_REMOVED:
+                    counted.decrementAndGet();
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void childEvent(CuratorFramework client, TreeCacheEvent event) {
+            switch (event.getType()) {
+                case NODE_ADDED:
+                    counted.addAndGet(nodeWatches(event.getData().getPath()));
+                    break;
+                case NODE_REMOVED:
+                    counted.addAndGet(-nodeWatches(event.getData().getPath()));
+                    break;
+                case INITIALIZED:
+                    initialized = true;
+                    break;
+                default:
+            }
+        }
+
+        private long nodeWatches(String nodePath) {
+            return ZKPath.of(nodePath).getDepth() - rootDepth < maxDepth ? 2 : 1;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.bytegen.common.zookeeper.cache;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Cheap content hash of node data, to tell a real change from a write of identical bytes.
+ */
+final class ZKContentDigest {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * @return null for null data
+     */
+    static HashCode of(byte[] data) {
+        return null == data ? null : HASH.hashBytes(data);
+    }
+
+    private ZKContentDigest() {
+    }
+}
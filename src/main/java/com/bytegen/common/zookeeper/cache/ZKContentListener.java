@@ -0,0 +1,15 @@
+package com.bytegen.common.zookeeper.cache;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Listener of cached node content, called only when the content bytes really changed.
+ */
+public interface ZKContentListener<T> {
+
+    /**
+     * @param oldData content before the change, null if the node was added
+     * @param newData content after the change, null if the node was removed
+     */
+    void contentChanged(String path, T oldData, T newData) throws Exception;
+}
@@ -0,0 +1,88 @@
+package com.bytegen.common.zookeeper.cache;
+
+import com.bytegen.common.zookeeper.serializer.ZKDataSerializer;
+import com.google.common.hash.HashCode;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Node cache listener which keeps the content hash of the node and drops events of unchanged content.
+ */
+public final class ZKDedupNodeCacheListener<T> implements NodeCacheListener {
+
+    private final NodeCache cache;
+    private final ZKDataSerializer<T> serializer;
+    private final ZKContentListener<T> listener;
+
+    private HashCode lastDigest;
+    private T lastData;
+    private final AtomicLong suppressed = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ZKDedupNodeCacheListener(NodeCache cache, ZKDataSerializer<T> serializer, ZKContentListener<T> listener) {
+        this.cache = cache;
+        this.serializer = serializer;
+        this.listener = listener;
+
+        // content already cached is the base line, not a change
+        seed();
+    }
+
+    /**
+     * Add the listener by the registration and take the content cached by then as the base line. Events wait
+     * for the base line, so a change made while registering is neither missed nor reported against stale content.
+     */
+    public void register(Callable<?> registration) throws Exception {
+        lock.lock();
+        try {
+            registration.call();
+            seed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void seed() {
+        ChildData current = cache.getCurrentData();
+        byte[] bytes = null == current ? null : current.getData();
+        lastDigest = ZKContentDigest.of(bytes);
+        lastData = null == bytes ? null : serializer.deserialize(bytes);
+    }
+
+    @Override
+    public void nodeChanged() throws Exception {
+        lock.lock();
+        try {
+            ChildData current = cache.getCurrentData();
+            byte[] bytes = null == current ? null : current.getData();
+            HashCode digest = ZKContentDigest.of(bytes);
+            if (Objects.equals(digest, lastDigest)) {
+                suppressed.incrementAndGet();
+                return;
+            }
+
+            T oldData = lastData;
+            T newData = null == bytes ? null : serializer.deserialize(bytes);
+            lastDigest = digest;
+            lastData = newData;
+            listener.contentChanged(cache.getPath(), oldData, newData);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Events dropped since the content did not change.
+     */
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+}
@@ -0,0 +1,113 @@
+package com.bytegen.common.zookeeper.cache;
+
+import com.bytegen.common.zookeeper.serializer.ZKDataSerializer;
+import com.google.common.hash.HashCode;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Path children cache listener which keeps the content hash per child and drops updates of unchanged content.
+ */
+public final class ZKDedupPathChildrenCacheListener<T> implements PathChildrenCacheListener {
+
+    private final PathChildrenCache cache;
+    private final ZKDataSerializer<T> serializer;
+    private final ZKContentListener<T> listener;
+
+    private final Map<String, Content<T>> contents = new HashMap<>();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ZKDedupPathChildrenCacheListener(PathChildrenCache cache, ZKDataSerializer<T> serializer, ZKContentListener<T> listener) {
+        this.cache = cache;
+        this.serializer = serializer;
+        this.listener = listener;
+
+        // children already cached are the base line, not changes
+        seed();
+    }
+
+    /**
+     * Add the listener by the registration and take the children cached by then as the base line. Events wait
+     * for the base line, so a change made while registering is neither missed nor reported against stale content.
+     */
+    public void register(Callable<?> registration) throws Exception {
+        lock.lock();
+        try {
+            registration.call();
+            seed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void seed() {
+        contents.clear();
+        for (ChildData current : cache.getCurrentData()) {
+            contents.put(current.getPath(), new Content<>(current.getData(), serializer));
+        }
+    }
+
+    @Override
+    public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+        lock.lock();
+        try {
+            ChildData childData = event.getData();
+            switch (event.getType()) {
+                case CHILD_ADDED:
+                case CHILD_UPDATED: {
+                    String path = childData.getPath();
+                    Content<T> old = contents.get(path);
+                    HashCode digest = ZKContentDigest.of(childData.getData());
+                    if (null != old && Objects.equals(digest, old.digest)) {
+                        suppressed.incrementAndGet();
+                        return;
+                    }
+                    Content<T> content = new Content<>(childData.getData(), serializer);
+                    contents.put(path, content);
+                    listener.contentChanged(path, null == old ? null : old.data, content.data);
+                    break;
+                }
+                case CHILD_REMOVED: {
+                    String path = childData.getPath();
+                    Content<T> old = contents.remove(path);
+                    listener.contentChanged(path, null == old ? null : old.data, null);
+                    break;
+                }
+                default:
+                    // connection and initialization events carry no content
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Events dropped since the content did not change.
+     */
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    private static final class Content<T> {
+        private final HashCode digest;
+        private final T data;
+
+        private Content(byte[] bytes, ZKDataSerializer<T> serializer) {
+            this.digest = ZKContentDigest.of(bytes);
+            this.data = null == bytes ? null : serializer.deserialize(bytes);
+        }
+    }
+}
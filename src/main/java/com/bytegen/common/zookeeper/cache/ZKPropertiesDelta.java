@@ -0,0 +1,82 @@
+package com.bytegen.common.zookeeper.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Keys added, removed and changed between two versions of a Properties node.
+ */
+public final class ZKPropertiesDelta {
+
+    private final Map<String, String> added;
+    private final Map<String, String> removed;
+    private final Map<String, String> changed;
+
+    private ZKPropertiesDelta(Map<String, String> added, Map<String, String> removed, Map<String, String> changed) {
+        this.added = Collections.unmodifiableMap(added);
+        this.removed = Collections.unmodifiableMap(removed);
+        this.changed = Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * Null Properties are taken as empty.
+     */
+    public static ZKPropertiesDelta between(Properties oldData, Properties newData) {
+        Map<String, String> added = new HashMap<>();
+        Map<String, String> removed = new HashMap<>();
+        Map<String, String> changed = new HashMap<>();
+        if (null != newData) {
+            for (String key : newData.stringPropertyNames()) {
+                String value = newData.getProperty(key);
+                String oldValue = null == oldData ? null : oldData.getProperty(key);
+                if (null == oldValue) {
+                    added.put(key, value);
+                } else if (!oldValue.equals(value)) {
+                    changed.put(key, value);
+                }
+            }
+        }
+        if (null != oldData) {
+            for (String key : oldData.stringPropertyNames()) {
+                if (null == newData || null == newData.getProperty(key)) {
+                    removed.put(key, oldData.getProperty(key));
+                }
+            }
+        }
+        return new ZKPropertiesDelta(added, removed, changed);
+    }
+
+    /**
+     * New keys with their values.
+     */
+    public Map<String, String> getAdded() {
+        return added;
+    }
+
+    /**
+     * Removed keys with their old values.
+     */
+    public Map<String, String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Changed keys with their new values.
+     */
+    public Map<String, String> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ZKPropertiesDelta{added=" + added.keySet() + ", removed=" + removed.keySet() + ", changed=" + changed.keySet() + "}";
+    }
+}
@@ -0,0 +1,30 @@
+package com.bytegen.common.zookeeper.cache;
+
+import java.util.Properties;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Listener of Properties nodes, called with the changed keys only. Writes which change no key,
+ * e.g. re-serialized with a new timestamp comment, are dropped; adding or removing a node is always reported,
+ * even with empty Properties.
+ */
+public interface ZKPropertiesDeltaListener {
+
+    /**
+     * @param current Properties after the change, null if the node was removed
+     */
+    void propertiesChanged(String path, ZKPropertiesDelta delta, Properties current) throws Exception;
+
+    /**
+     * Adapt to a content listener of Properties.
+     */
+    static ZKContentListener<Properties> asContentListener(ZKPropertiesDeltaListener listener) {
+        return (path, oldData, newData) -> {
+            ZKPropertiesDelta delta = ZKPropertiesDelta.between(oldData, newData);
+            if (!delta.isEmpty() || null == oldData || null == newData) {
+                listener.propertiesChanged(path, delta, newData);
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.bytegen.common.zookeeper.chunk;
+
+import java.io.IOException;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Thrown when reassembled chunks do not match the manifest.
+ */
+public class ZKChunkCorruptedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ZKChunkCorruptedException(String message) {
+        super(message);
+    }
+}
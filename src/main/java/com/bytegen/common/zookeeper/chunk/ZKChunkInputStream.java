@@ -0,0 +1,132 @@
+package com.bytegen.common.zookeeper.chunk;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Stream of a chunked value, holding at most the current and the prefetched chunk in memory.
+ */
+final class ZKChunkInputStream extends InputStream {
+
+    private final ZKClient client;
+    private final String realPath;
+    private final ZKChunkManifest manifest;
+    private final MessageDigest digest = ZKChunkedStorage.sha256();
+
+    private int nextIndex;
+    private CompletableFuture<byte[]> prefetch;
+    private byte[] current;
+    private int position;
+    private boolean verified;
+
+    ZKChunkInputStream(ZKClient client, String realPath, ZKChunkManifest manifest) {
+        this.client = client;
+        this.realPath = realPath;
+        this.manifest = manifest;
+        this.prefetch = manifest.getChunkCount() > 0 ? fetch(0) : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return null == current ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (null != prefetch) {
+            prefetch.cancel(false);
+            prefetch = null;
+        }
+        current = null;
+    }
+
+    private boolean ensureChunk() throws IOException {
+        while (null == current || position == current.length) {
+            if (nextIndex >= manifest.getChunkCount()) {
+                if (!verified) {
+                    verified = true;
+                    if (!manifest.matches(digest.digest())) {
+                        throw new ZKChunkCorruptedException("Checksum mismatch of chunked node: " + realPath);
+                    }
+                }
+                return false;
+            }
+            if (null == prefetch) {
+                throw new IOException("Stream closed.");
+            }
+            current = await(prefetch, nextIndex);
+            position = 0;
+            digest.update(current);
+            nextIndex++;
+            prefetch = nextIndex < manifest.getChunkCount() ? fetch(nextIndex) : null;
+        }
+        return true;
+    }
+
+    private CompletableFuture<byte[]> fetch(int index) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        String chunkPath = ZKPaths.makePath(realPath, manifest.chunkName(index));
+        try {
+            client.acquirePermit(ZKActionType.GET_DATA, chunkPath);
+            client.getFramework().getData().inBackground((c, event) -> {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    future.complete(event.getData());
+                } else {
+                    future.completeExceptionally(KeeperException.create(KeeperException.Code.get(event.getResultCode()), chunkPath));
+                }
+            }).forPath(chunkPath);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private byte[] await(CompletableFuture<byte[]> future, int index) throws IOException {
+        byte[] chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading chunk of " + realPath);
+        } catch (ExecutionException e) {
+            throw new IOException("Read chunk of " + realPath + " failed.", e.getCause());
+        }
+        if (null == chunk || chunk.length != manifest.chunkLength(index)) {
+            throw new ZKChunkCorruptedException("Unexpected chunk length: " + manifest.chunkName(index));
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,117 @@
+package com.bytegen.common.zookeeper.chunk;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Data of a chunked node: which generation of chunk children holds the value, its length and SHA-256.
+ */
+public final class ZKChunkManifest {
+
+    private static final int MAGIC = 0x5A4B434D; // "ZKCM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int SIZE = 4 + 4 + 8 + 8 + 4 + 4 + HASH_LENGTH;
+
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    private final long generation;
+    private final long length;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final byte[] sha256;
+
+    ZKChunkManifest(long generation, long length, int chunkSize, byte[] sha256) {
+        this.generation = generation;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.chunkCount = (int) ((length + chunkSize - 1) / chunkSize);
+        this.sha256 = sha256;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public byte[] getSha256() {
+        return sha256.clone();
+    }
+
+    boolean matches(byte[] digest) {
+        return Arrays.equals(sha256, digest);
+    }
+
+    /**
+     * Name of the chunk child node.
+     */
+    String chunkName(int index) {
+        return String.format("%s%016x-%06d", CHUNK_PREFIX, generation, index);
+    }
+
+    /**
+     * Whether the child node is a chunk of this generation.
+     */
+    boolean isOwnChunk(String name) {
+        return name.startsWith(String.format("%s%016x-", CHUNK_PREFIX, generation));
+    }
+
+    /**
+     * Whether the child node is a chunk of any generation.
+     */
+    static boolean isChunk(String name) {
+        return name.startsWith(CHUNK_PREFIX);
+    }
+
+    int chunkLength(int index) {
+        return (int) Math.min(chunkSize, length - (long) index * chunkSize);
+    }
+
+    byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(generation).putLong(length)
+                .putInt(chunkSize).putInt(chunkCount).put(sha256);
+        return buffer.array();
+    }
+
+    static boolean isManifest(byte[] bytes) {
+        return null != bytes && bytes.length == SIZE && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    static ZKChunkManifest fromBytes(byte[] bytes) {
+        if (!isManifest(bytes)) {
+            throw new IllegalStateException("Node data is not a chunk manifest.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.getInt();
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported chunk manifest version: " + version);
+        }
+        long generation = buffer.getLong();
+        long length = buffer.getLong();
+        int chunkSize = buffer.getInt();
+        buffer.getInt();
+        byte[] sha256 = new byte[HASH_LENGTH];
+        buffer.get(sha256);
+        return new ZKChunkManifest(generation, length, chunkSize, sha256);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZKChunkManifest{generation=%016x, length=%d, chunks=%d}", generation, length, chunkCount);
+    }
+}
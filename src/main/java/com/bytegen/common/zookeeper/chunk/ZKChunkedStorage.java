@@ -0,0 +1,334 @@
+package com.bytegen.common.zookeeper.chunk;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Store values above jute.maxbuffer as chunk children of the node, with a manifest as the node data.
+ * <p>
+ * A write creates the chunks of a new generation in multi-op batches, then switches the manifest with
+ * a versioned set data, which is the single atomic commit: readers see either the old or the new value,
+ * never a mix. A multi-op carrying every chunk would itself exceed jute.maxbuffer, so the chunks can't
+ * share one transaction with the manifest. After the switch the writer deletes the generation named by the
+ * manifest it replaced, and any other chunk created before its switch: a write which began before it can no
+ * longer commit, while chunks created after it may belong to a write in progress. A reader racing with that
+ * deletion re-reads the manifest. Chunks of a writer that lost the switch are deleted by that writer, and if
+ * that fails by the next write or {@link #sweep}.
+ */
+public final class ZKChunkedStorage {
+    private static final Logger logger = LoggerFactory.getLogger(ZKChunkedStorage.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    /**
+     * Keep requests below the default jute.maxbuffer (1M).
+     */
+    private static final int MAX_CHUNK_SIZE = 1000 * 1024;
+    private static final int MAX_BATCH_BYTES = 512 * 1024;
+    private static final int MAX_READ_ATTEMPTS = 3;
+    private static final byte[] EMPTY_DATA = new byte[0];
+
+    private final ZKClient client;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public ZKChunkedStorage(ZKClient client) {
+        this(client, DEFAULT_CHUNK_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    public ZKChunkedStorage(ZKClient client, int chunkSize, int parallelism) {
+        Validate.notNull(client, "Client can't be null.");
+        Validate.inclusiveBetween(1, MAX_CHUNK_SIZE, chunkSize, "Chunk size must be in (0, " + MAX_CHUNK_SIZE + "].");
+        Validate.isTrue(parallelism > 0, "Parallelism must be positive.");
+        this.client = client;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Write the value of the node, creating it if missing.
+     */
+    public ZKChunkManifest write(final String path, final byte[] data) throws Exception {
+        Validate.notNull(data, "Data can't be null.");
+
+        String realPath = client.getRealPath(path);
+        try {
+            return write(client.getFramework(), realPath, data);
+        } finally {
+            client.markWritten(realPath);
+        }
+    }
+
+    private ZKChunkManifest write(CuratorFramework framework, String realPath, byte[] data) throws Exception {
+        Stat stat = new Stat();
+        byte[] current = readCurrent(framework, realPath, stat);
+        if (null == current) {
+            client.acquirePermit(ZKActionType.CREATE_PERSISTENT, realPath);
+            try {
+                framework.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(realPath, EMPTY_DATA);
+            } catch (KeeperException.NodeExistsException e) {
+                // created concurrently
+            }
+            current = readCurrent(framework, realPath, stat);
+            if (null == current) {
+                throw new KeeperException.NoNodeException(realPath);
+            }
+        }
+        ZKChunkManifest previous = ZKChunkManifest.isManifest(current) ? ZKChunkManifest.fromBytes(current) : null;
+
+        ZKChunkManifest manifest = new ZKChunkManifest(ThreadLocalRandom.current().nextLong(), data.length,
+                chunkSize, sha256().digest(data));
+        Stat committed;
+        try {
+            writeChunks(framework, realPath, manifest, data);
+            client.acquirePermit(ZKActionType.SET_DATA, realPath);
+            committed = framework.setData().withVersion(stat.getVersion()).forPath(realPath, manifest.toBytes());
+        } catch (Exception e) {
+            deleteChunks(framework, realPath, manifest::isOwnChunk);
+            throw e;
+        }
+        try {
+            deleteStaleChunks(framework, realPath, manifest, previous, committed.getMzxid());
+        } catch (Exception e) {
+            logger.warn("Delete stale chunks of [{}] failed, they will be cleaned up by the next write.", realPath, e);
+        }
+
+        ZKActionMonitor.getInstance().triggerAction(ZKActionType.SET_DATA, client, realPath, manifest.toString());
+        return manifest;
+    }
+
+    /**
+     * Delete the chunks no write can commit anymore, left by writers which failed before cleaning up.
+     *
+     * @return number of deleted chunks
+     */
+    public int sweep(final String path) throws Exception {
+        String realPath = client.getRealPath(path);
+        CuratorFramework framework = client.getFramework();
+        Stat stat = new Stat();
+        byte[] current = readCurrent(framework, realPath, stat);
+        if (null == current) {
+            return 0;
+        }
+        ZKChunkManifest manifest = ZKChunkManifest.isManifest(current) ? ZKChunkManifest.fromBytes(current) : null;
+        try {
+            return deleteStaleChunks(framework, realPath, manifest, null, stat.getMzxid());
+        } finally {
+            client.markWritten(realPath);
+        }
+    }
+
+    /**
+     * Read the whole value, fetching chunks in parallel and verifying the checksum.
+     */
+    public byte[] read(final String path) throws Exception {
+        String realPath = client.getRealPath(path);
+        for (int attempt = 1; ; attempt++) {
+            ZKChunkManifest manifest = readManifest(realPath);
+            try {
+                byte[] data = fetchChunks(realPath, manifest);
+                if (!manifest.matches(sha256().digest(data))) {
+                    throw new ZKChunkCorruptedException("Checksum mismatch of chunked node: " + realPath);
+                }
+                ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_DATA, client, realPath, manifest.toString());
+                return data;
+            } catch (KeeperException.NoNodeException e) {
+                // chunks replaced by a newer write after the manifest was read
+                if (attempt >= MAX_READ_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream the value chunk by chunk, prefetching the next chunk. The checksum is verified at the end of the stream.
+     */
+    public InputStream openStream(final String path) throws Exception {
+        String realPath = client.getRealPath(path);
+        ZKChunkManifest manifest = readManifest(realPath);
+        ZKActionMonitor.getInstance().triggerAction(ZKActionType.GET_DATA, client, realPath, manifest.toString());
+        return new ZKChunkInputStream(client, realPath, manifest);
+    }
+
+    /**
+     * Data and stat of the node, or null if missing.
+     */
+    private byte[] readCurrent(CuratorFramework framework, String realPath, Stat stat) throws Exception {
+        client.acquirePermit(ZKActionType.GET_DATA, realPath);
+        try {
+            byte[] current = framework.getData().storingStatIn(stat).forPath(realPath);
+            return null == current ? EMPTY_DATA : current;
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    public ZKChunkManifest readManifest(final String path) throws Exception {
+        String realPath = client.getRealPath(path);
+        client.acquirePermit(ZKActionType.GET_DATA, realPath);
+        return ZKChunkManifest.fromBytes(client.getFramework().getData().forPath(realPath));
+    }
+
+    private void writeChunks(CuratorFramework framework, String realPath, ZKChunkManifest manifest, byte[] data) throws Exception {
+        List<CuratorOp> ops = new ArrayList<>();
+        int batchBytes = 0;
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            int offset = i * manifest.getChunkSize();
+            byte[] chunk = Arrays.copyOfRange(data, offset, offset + manifest.chunkLength(i));
+            if (!ops.isEmpty() && batchBytes + chunk.length > MAX_BATCH_BYTES) {
+                framework.transaction().forOperations(ops);
+                ops.clear();
+                batchBytes = 0;
+            }
+            String chunkPath = ZKPaths.makePath(realPath, manifest.chunkName(i));
+            client.acquirePermit(ZKActionType.CREATE_PERSISTENT, chunkPath);
+            ops.add(framework.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(chunkPath, chunk));
+            batchBytes += chunk.length;
+        }
+        if (!ops.isEmpty()) {
+            framework.transaction().forOperations(ops);
+        }
+    }
+
+    private byte[] fetchChunks(String realPath, ZKChunkManifest manifest) throws Exception {
+        Validate.validState(manifest.getLength() <= Integer.MAX_VALUE - 8, "Chunked value too large for an array, use openStream.");
+        if (manifest.getChunkSize() <= 0 || manifest.getLength() < 0) {
+            throw new ZKChunkCorruptedException("Invalid chunk manifest of node: " + realPath);
+        }
+
+        byte[] data = new byte[(int) manifest.getLength()];
+        int count = manifest.getChunkCount();
+        CountDownLatch done = new CountDownLatch(count);
+        Semaphore window = new Semaphore(parallelism);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CuratorFramework framework = client.getFramework();
+        for (int i = 0; i < count; i++) {
+            window.acquire();
+            if (null != error.get()) {
+                for (int j = i; j < count; j++) {
+                    done.countDown();
+                }
+                break;
+            }
+            final int index = i;
+            String chunkPath = ZKPaths.makePath(realPath, manifest.chunkName(index));
+            try {
+                client.acquirePermit(ZKActionType.GET_DATA, chunkPath);
+                framework.getData().inBackground((c, event) -> {
+                    try {
+                        if (event.getResultCode() != KeeperException.Code.OK.intValue()) {
+                            error.compareAndSet(null, KeeperException.create(KeeperException.Code.get(event.getResultCode()), chunkPath));
+                        } else if (null == event.getData() || event.getData().length != manifest.chunkLength(index)) {
+                            error.compareAndSet(null, new ZKChunkCorruptedException("Unexpected chunk length: " + chunkPath));
+                        } else {
+                            System.arraycopy(event.getData(), 0, data, index * manifest.getChunkSize(), event.getData().length);
+                        }
+                    } finally {
+                        window.release();
+                        done.countDown();
+                    }
+                }).forPath(chunkPath);
+            } catch (Exception e) {
+                error.compareAndSet(null, e);
+                window.release();
+                done.countDown();
+            }
+        }
+        done.await();
+        if (null != error.get()) {
+            throw error.get();
+        }
+        return data;
+    }
+
+    /**
+     * Delete the chunks other than those of the current manifest which were created before it was committed at
+     * the given zxid. Chunks of the replaced manifest are known to be older, the others are checked one by one.
+     */
+    private int deleteStaleChunks(CuratorFramework framework, String realPath, ZKChunkManifest current,
+                                  ZKChunkManifest previous, long committedZxid) throws Exception {
+        int deleted = 0;
+        client.acquirePermit(ZKActionType.GET_CHILD_NAMES, realPath);
+        List<String> names;
+        try {
+            names = framework.getChildren().forPath(realPath);
+        } catch (KeeperException.NoNodeException e) {
+            return deleted;
+        }
+        for (String name : names) {
+            if (!ZKChunkManifest.isChunk(name) || (null != current && current.isOwnChunk(name))) {
+                continue;
+            }
+            String chunkPath = ZKPaths.makePath(realPath, name);
+            if (null == previous || !previous.isOwnChunk(name)) {
+                client.acquirePermit(ZKActionType.CHECK_EXISTS, chunkPath);
+                Stat stat = framework.checkExists().forPath(chunkPath);
+                if (null == stat || stat.getCzxid() > committedZxid) {
+                    continue;
+                }
+            }
+            client.acquirePermit(ZKActionType.DELETE_PATH, chunkPath);
+            try {
+                framework.delete().forPath(chunkPath);
+                deleted++;
+            } catch (KeeperException.NoNodeException e) {
+                // deleted concurrently
+            }
+        }
+        return deleted;
+    }
+
+    private void deleteChunks(CuratorFramework framework, String realPath, Predicate<String> filter) {
+        try {
+            for (String name : framework.getChildren().forPath(realPath)) {
+                if (filter.test(name)) {
+                    String chunkPath = ZKPaths.makePath(realPath, name);
+                    client.acquirePermit(ZKActionType.DELETE_PATH, chunkPath);
+                    try {
+                        framework.delete().forPath(chunkPath);
+                    } catch (KeeperException.NoNodeException e) {
+                        // deleted concurrently
+                    }
+                }
+            }
+        } catch (KeeperException.NoNodeException e) {
+            // nothing to clean
+        } catch (Exception e) {
+            logger.warn("Delete chunks of [{}] failed, they will be cleaned up by the next write.", realPath, e);
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
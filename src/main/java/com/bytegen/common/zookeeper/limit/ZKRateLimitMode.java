@@ -0,0 +1,23 @@
+package com.bytegen.common.zookeeper.limit;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: What to do with an operation exceeding its rate limit.
+ */
+public enum ZKRateLimitMode {
+
+    /**
+     * Wait as long as needed for a permit.
+     */
+    BLOCK,
+    /**
+     * Reject the operation at once.
+     */
+    FAIL_FAST,
+    /**
+     * Queue the operation for a permit if it can be granted within the max queue wait, otherwise reject.
+     */
+    QUEUE,
+
+}
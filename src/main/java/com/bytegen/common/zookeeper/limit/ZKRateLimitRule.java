@@ -0,0 +1,65 @@
+package com.bytegen.common.zookeeper.limit;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Rate limit setting: sustained rate, burst size and the mode applied when exceeded.
+ */
+public final class ZKRateLimitRule {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final ZKRateLimitMode mode;
+    private final long maxQueueWaitNanos;
+
+    private ZKRateLimitRule(double permitsPerSecond, int burst, ZKRateLimitMode mode, long maxQueueWaitNanos) {
+        Validate.isTrue(permitsPerSecond > 0, "Permits per second must be positive.");
+        Validate.isTrue(burst > 0, "Burst must be positive.");
+        Validate.isTrue(maxQueueWaitNanos >= 0, "Max queue wait can't be negative.");
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.mode = mode;
+        this.maxQueueWaitNanos = maxQueueWaitNanos;
+    }
+
+    public static ZKRateLimitRule blocking(double permitsPerSecond, int burst) {
+        return new ZKRateLimitRule(permitsPerSecond, burst, ZKRateLimitMode.BLOCK, Long.MAX_VALUE);
+    }
+
+    public static ZKRateLimitRule failFast(double permitsPerSecond, int burst) {
+        return new ZKRateLimitRule(permitsPerSecond, burst, ZKRateLimitMode.FAIL_FAST, 0);
+    }
+
+    public static ZKRateLimitRule queueing(double permitsPerSecond, int burst, long maxQueueWait, TimeUnit unit) {
+        return new ZKRateLimitRule(permitsPerSecond, burst, ZKRateLimitMode.QUEUE, unit.toNanos(maxQueueWait));
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public ZKRateLimitMode getMode() {
+        return mode;
+    }
+
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos;
+    }
+
+    ZKTokenBucket newBucket() {
+        return new ZKTokenBucket(permitsPerSecond, burst);
+    }
+
+    @Override
+    public String toString() {
+        return "ZKRateLimitRule{permitsPerSecond=" + permitsPerSecond + ", burst=" + burst + ", mode=" + mode + "}";
+    }
+}
@@ -0,0 +1,123 @@
+package com.bytegen.common.zookeeper.limit;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+import com.bytegen.common.zookeeper.path.ZKPath;
+import com.bytegen.common.zookeeper.path.ZKPathTrie;
+import org.apache.commons.lang3.Validate;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Client side rate limits by operation type and by path prefix. An operation has to pass
+ * the global limit, the limit of its type and the limit of the most specific matching prefix.
+ * Rules are copied on write or kept in a concurrent trie, so the hot path takes no locks: it reads
+ * volatile fields, walks the trie and CASes token buckets.
+ * Every throttled operation is published as a THROTTLED event of {@link ZKActionMonitor}.
+ */
+public final class ZKRateLimiter {
+
+    private volatile Limit globalLimit;
+    private volatile Map<ZKActionType, Limit> typeLimits = new EnumMap<>(ZKActionType.class);
+    private final ZKPathTrie<Limit> prefixLimits = new ZKPathTrie<>();
+
+    /**
+     * Limit all operations.
+     */
+    public ZKRateLimiter limitAll(ZKRateLimitRule rule) {
+        Validate.notNull(rule, "Rate limit rule can't be null.");
+        globalLimit = new Limit(rule);
+        return this;
+    }
+
+    /**
+     * Limit operations of given type.
+     */
+    public synchronized ZKRateLimiter limit(ZKActionType type, ZKRateLimitRule rule) {
+        Validate.notNull(type, "Action type can't be null.");
+        Validate.notNull(rule, "Rate limit rule can't be null.");
+        Map<ZKActionType, Limit> limits = new EnumMap<>(typeLimits);
+        limits.put(type, new Limit(rule));
+        typeLimits = limits;
+        return this;
+    }
+
+    /**
+     * Limit operations on given path and its descendants.
+     */
+    public synchronized ZKRateLimiter limitPathPrefix(String prefix, ZKRateLimitRule rule) {
+        Validate.notBlank(prefix, "Path prefix can't be blank.");
+        Validate.notNull(rule, "Rate limit rule can't be null.");
+        prefixLimits.put(ZKPath.of(prefix), new Limit(rule));
+        return this;
+    }
+
+    /**
+     * Wait for or reject the operation according to the matching rules. Permits are reserved from every
+     * matching limit before waiting; if one limit rejects, the permits reserved from the others are returned.
+     *
+     * @throws ZKThrottledException if a rule rejects the operation
+     */
+    public void acquire(ZKActionType type, String realPath, ZKClient client) throws InterruptedException {
+        Limit[] limits = {globalLimit, typeLimits.get(type),
+                null == realPath ? null : prefixLimits.getClosest(ZKPath.of(realPath))};
+        long waitNanos = 0;
+        for (int i = 0; i < limits.length; i++) {
+            if (null == limits[i]) {
+                continue;
+            }
+            long limitWait = limits[i].reserve();
+            if (limitWait < 0) {
+                for (int j = 0; j < i; j++) {
+                    if (null != limits[j]) {
+                        limits[j].bucket.refund();
+                    }
+                }
+                limits[i].reject(type, realPath, client);
+            }
+            // reservations run concurrently, so the longest one is the wait
+            waitNanos = Math.max(waitNanos, limitWait);
+        }
+        if (waitNanos > 0) {
+            ZKActionMonitor.getInstance().triggerAction(ZKActionType.THROTTLED, client, realPath,
+                    type.name() + " delayed " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + "ms");
+            long deadline = System.nanoTime() + waitNanos;
+            for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted while waiting for rate limit permit.");
+                }
+            }
+        }
+    }
+
+    private static final class Limit {
+        private final ZKRateLimitRule rule;
+        private final ZKTokenBucket bucket;
+
+        private Limit(ZKRateLimitRule rule) {
+            this.rule = rule;
+            this.bucket = rule.newBucket();
+        }
+
+        /**
+         * @return nanos to wait for the reserved permit, or -1 if rejected
+         */
+        private long reserve() {
+            return bucket.reserve(rule.getMode() == ZKRateLimitMode.FAIL_FAST ? 0 : rule.getMaxQueueWaitNanos());
+        }
+
+        private void reject(ZKActionType type, String realPath, ZKClient client) {
+            ZKActionMonitor.getInstance().triggerAction(ZKActionType.THROTTLED, client, realPath,
+                    type.name() + " rejected");
+            throw new ZKThrottledException(String.format("Operation [%s] on path [%s] throttled by %s",
+                    type.name(), realPath, rule));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.bytegen.common.zookeeper.limit;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Thrown when an operation is rejected by the client side rate limit.
+ */
+public class ZKThrottledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ZKThrottledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,61 @@
+package com.bytegen.common.zookeeper.limit;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Lock-free token bucket. The state is a single "next free" timestamp updated by CAS
+ * (the generic cell rate algorithm), so acquiring a permit never takes a lock.
+ */
+final class ZKTokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextFreeNanos;
+
+    ZKTokenBucket(double permitsPerSecond, int burst) {
+        Validate.isTrue(permitsPerSecond > 0, "Permits per second must be positive.");
+        Validate.isTrue(burst > 0, "Burst must be positive.");
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * (burst - 1);
+        this.nextFreeNanos = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * Take a permit if one is available now.
+     */
+    boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Reserve a permit granted within maxWaitNanos.
+     *
+     * @return nanos the caller has to wait before using the permit, or -1 if none is granted in time
+     */
+    long reserve(long maxWaitNanos) {
+        while (true) {
+            long now = System.nanoTime();
+            long next = nextFreeNanos.get();
+            long start = Math.max(next, now - burstNanos);
+            long waitNanos = Math.max(0L, start - now);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (nextFreeNanos.compareAndSet(next, start + intervalNanos)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /**
+     * Give back a permit reserved but not used.
+     */
+    void refund() {
+        nextFreeNanos.addAndGet(-intervalNanos);
+    }
+}
@@ -0,0 +1,61 @@
+package com.bytegen.common.zookeeper.limit;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Limit of watches set by caches: in total over one connection, and for a single cache.
+ * 0 means no limit. The budget is checked when a cache is created; watches added later by new nodes
+ * are counted but do not close caches.
+ */
+public final class ZKWatchBudget {
+
+    private final long maxWatches;
+    private final long maxWatchesPerCache;
+    private final ZKWatchBudgetMode mode;
+
+    private ZKWatchBudget(long maxWatches, long maxWatchesPerCache, ZKWatchBudgetMode mode) {
+        Validate.isTrue(maxWatches >= 0, "Max watches can't be negative.");
+        Validate.isTrue(maxWatchesPerCache >= 0, "Max watches per cache can't be negative.");
+        this.maxWatches = maxWatches;
+        this.maxWatchesPerCache = maxWatchesPerCache;
+        this.mode = mode;
+    }
+
+    public static ZKWatchBudget rejecting(long maxWatches, long maxWatchesPerCache) {
+        return new ZKWatchBudget(maxWatches, maxWatchesPerCache, ZKWatchBudgetMode.REJECT);
+    }
+
+    public static ZKWatchBudget degrading(long maxWatches, long maxWatchesPerCache) {
+        return new ZKWatchBudget(maxWatches, maxWatchesPerCache, ZKWatchBudgetMode.DEGRADE);
+    }
+
+    public long getMaxWatches() {
+        return maxWatches;
+    }
+
+    public long getMaxWatchesPerCache() {
+        return maxWatchesPerCache;
+    }
+
+    public ZKWatchBudgetMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Watches a new cache may set while the connection already has the given active watches.
+     */
+    public long getAllowance(long activeWatches) {
+        long allowance = maxWatchesPerCache > 0 ? maxWatchesPerCache : Long.MAX_VALUE;
+        if (maxWatches > 0) {
+            allowance = Math.min(allowance, Math.max(0, maxWatches - activeWatches));
+        }
+        return allowance;
+    }
+
+    @Override
+    public String toString() {
+        return "ZKWatchBudget{maxWatches=" + maxWatches + ", maxWatchesPerCache=" + maxWatchesPerCache + ", mode=" + mode + "}";
+    }
+}
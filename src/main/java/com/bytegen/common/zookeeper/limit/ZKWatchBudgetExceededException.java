@@ -0,0 +1,14 @@
+package com.bytegen.common.zookeeper.limit;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Thrown when a cache is refused because its watches would exceed the watch budget.
+ */
+public class ZKWatchBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ZKWatchBudgetExceededException(String message) {
+        super(message);
+    }
+}
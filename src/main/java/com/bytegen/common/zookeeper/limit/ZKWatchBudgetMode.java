@@ -0,0 +1,19 @@
+package com.bytegen.common.zookeeper.limit;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: What to do with a cache whose watches would exceed the watch budget.
+ */
+public enum ZKWatchBudgetMode {
+
+    /**
+     * Refuse to create the cache.
+     */
+    REJECT,
+    /**
+     * Create a tree cache limited to the depth fitting in the budget; other caches are refused.
+     */
+    DEGRADE,
+
+}
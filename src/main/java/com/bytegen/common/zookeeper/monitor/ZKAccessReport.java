@@ -0,0 +1,124 @@
+package com.bytegen.common.zookeeper.monitor;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Access statistics of one report interval. Counts of hot keys are sketch estimates, which may overcount
+ * but never undercount.
+ */
+public final class ZKAccessReport {
+
+    private final long startTime;
+    private final long endTime;
+    private final long total;
+    private final Map<ZKActionType, Long> typeCounts;
+    private final List<HotKey> hotPaths;
+    private final List<HotKey> hotOperations;
+    private final List<ZKListenerTiming> listenerTimings;
+
+    ZKAccessReport(long startTime, long endTime, long total, Map<ZKActionType, Long> typeCounts,
+                   List<HotKey> hotPaths, List<HotKey> hotOperations, List<ZKListenerTiming> listenerTimings) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.total = total;
+        this.typeCounts = Collections.unmodifiableMap(typeCounts);
+        this.hotPaths = Collections.unmodifiableList(hotPaths);
+        this.hotOperations = Collections.unmodifiableList(hotOperations);
+        this.listenerTimings = Collections.unmodifiableList(listenerTimings);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Number of actions in the interval.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Exact number of actions per type.
+     */
+    public Map<ZKActionType, Long> getTypeCounts() {
+        return typeCounts;
+    }
+
+    /**
+     * Most accessed paths, the hottest first.
+     */
+    public List<HotKey> getHotPaths() {
+        return hotPaths;
+    }
+
+    /**
+     * Most frequent action type and path pairs as "TYPE path", the hottest first.
+     */
+    public List<HotKey> getHotOperations() {
+        return hotOperations;
+    }
+
+    /**
+     * Time spent by each action subscriber since it was added, the slowest on average first.
+     */
+    public List<ZKListenerTiming> getListenerTimings() {
+        return listenerTimings;
+    }
+
+    @Override
+    public String toString() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder builder = new StringBuilder("ZooKeeper access report [")
+                .append(format.format(new Date(startTime))).append(" - ").append(format.format(new Date(endTime)))
+                .append("], total ").append(total).append(", types ").append(typeCounts);
+        builder.append("\n  hot paths:");
+        for (HotKey key : hotPaths) {
+            builder.append("\n    ").append(key);
+        }
+        builder.append("\n  hot operations:");
+        for (HotKey key : hotOperations) {
+            builder.append("\n    ").append(key);
+        }
+        builder.append("\n  subscribers:");
+        for (ZKListenerTiming timing : listenerTimings) {
+            builder.append("\n    ").append(timing);
+        }
+        return builder.toString();
+    }
+
+    public static final class HotKey {
+        private final String key;
+        private final long count;
+
+        HotKey(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + " = " + count;
+        }
+    }
+}
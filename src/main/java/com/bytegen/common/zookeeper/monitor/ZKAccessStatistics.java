@@ -0,0 +1,178 @@
+package com.bytegen.common.zookeeper.monitor;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.ZKConstant;
+import com.bytegen.common.zookeeper.ZKExecutors;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Action subscriber finding hot paths in constant memory. Paths and "TYPE path" pairs are counted in
+ * count-min sketches with a small top set each, action types are counted exactly. Counts cover one report
+ * interval: each report is logged, passed to the report listeners and starts a new interval.
+ */
+public final class ZKAccessStatistics implements ZKActionListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZKAccessStatistics.class);
+
+    public static final int DEFAULT_TOP_SIZE = 20;
+    public static final long DEFAULT_REPORT_MINUTES = 5;
+
+    /**
+     * 4 rows of 2048 counters, about 0.13% of the interval total as overcount bound per key
+     */
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int SKETCH_DEPTH = 4;
+
+    private final ZKHeavyHitters paths;
+    private final ZKHeavyHitters operations;
+    private final long[] typeCounts = new long[ZKActionType.values().length];
+    private long total;
+    private long startTime = System.currentTimeMillis();
+
+    private final List<Consumer<ZKAccessReport>> reportListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService reportExecutor;
+
+    private ZKAccessStatistics(int topSize, long reportInterval, TimeUnit unit) {
+        this.paths = new ZKHeavyHitters(topSize, SKETCH_WIDTH, SKETCH_DEPTH);
+        this.operations = new ZKHeavyHitters(topSize, SKETCH_WIDTH, SKETCH_DEPTH);
+        if (reportInterval > 0) {
+            reportExecutor = Executors.newSingleThreadScheduledExecutor(
+                    ZKExecutors.newThreadFactory("zookeeper-access-report-thread-%d", true));
+            reportExecutor.scheduleWithFixedDelay(this::reportQuietly, reportInterval, reportInterval, unit);
+        } else {
+            reportExecutor = null;
+        }
+    }
+
+    /**
+     * Start collecting with the default top size, reporting every 5 minutes.
+     */
+    public static ZKAccessStatistics start() {
+        return start(DEFAULT_TOP_SIZE, DEFAULT_REPORT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Start collecting.
+     *
+     * @param topSize        number of hot keys kept
+     * @param reportInterval interval of periodic reports, 0 to only report on demand
+     */
+    public static ZKAccessStatistics start(int topSize, long reportInterval, TimeUnit unit) {
+        Validate.isTrue(topSize > 0, "Top size must be positive.");
+        Validate.isTrue(reportInterval >= 0, "Report interval can't be negative.");
+        Validate.notNull(unit, "Time unit can't be null.");
+        ZKAccessStatistics statistics = new ZKAccessStatistics(topSize, reportInterval, unit);
+        ZKActionMonitor.getInstance().addSubscriber(statistics);
+        return statistics;
+    }
+
+    @Override
+    public synchronized void onAction(ZKActionType type, ZKClient client, String path, Object data) {
+        total++;
+        typeCounts[type.ordinal()]++;
+        if (null == path) {
+            return;
+        }
+        // some actions carry the path as given by the caller, e.g. "a" for "/a"
+        String realPath = client.getRealPath(path);
+        String namespace = client.getNamespace();
+        String fullPath = StringUtils.isBlank(namespace) ? realPath
+                : ZKConstant.PATH_SEPERATOR + namespace + (ZKConstant.PATH_SEPERATOR.equals(realPath) ? "" : realPath);
+        paths.add(fullPath);
+        operations.add(type.name() + " " + fullPath);
+    }
+
+    /**
+     * Estimated number of actions on the path in the current interval, namespace included.
+     */
+    public synchronized long estimate(String path) {
+        return paths.estimate(path);
+    }
+
+    public synchronized long estimate(ZKActionType type, String path) {
+        return operations.estimate(type.name() + " " + path);
+    }
+
+    /**
+     * Statistics of the current interval so far.
+     */
+    public synchronized ZKAccessReport snapshot() {
+        Map<ZKActionType, Long> counts = new EnumMap<>(ZKActionType.class);
+        for (ZKActionType type : ZKActionType.values()) {
+            if (typeCounts[type.ordinal()] > 0) {
+                counts.put(type, typeCounts[type.ordinal()]);
+            }
+        }
+        return new ZKAccessReport(startTime, System.currentTimeMillis(), total, counts, paths.top(), operations.top(),
+                ZKActionMonitor.getInstance().getSubscriberTimings());
+    }
+
+    /**
+     * Report the current interval and start a new one.
+     */
+    public ZKAccessReport report() {
+        ZKAccessReport report;
+        synchronized (this) {
+            report = snapshot();
+            paths.clear();
+            operations.clear();
+            for (int i = 0; i < typeCounts.length; i++) {
+                typeCounts[i] = 0;
+            }
+            total = 0;
+            startTime = report.getEndTime();
+        }
+        logger.info("{}", report);
+        for (Consumer<ZKAccessReport> listener : reportListeners) {
+            try {
+                listener.accept(report);
+            } catch (Exception e) {
+                logger.error("ZooKeeper access report listener failed.", e);
+            }
+        }
+        return report;
+    }
+
+    public void addReportListener(Consumer<ZKAccessReport> listener) {
+        Validate.notNull(listener, "Report listener can't be null.");
+        reportListeners.add(listener);
+    }
+
+    public void removeReportListener(Consumer<ZKAccessReport> listener) {
+        reportListeners.remove(listener);
+    }
+
+    private void reportQuietly() {
+        try {
+            report();
+        } catch (Exception e) {
+            logger.error("ZooKeeper access report failed.", e);
+        }
+    }
+
+    /**
+     * Stop collecting and reporting.
+     */
+    @Override
+    public void close() {
+        ZKActionMonitor.getInstance().removeSubscriber(this);
+        if (null != reportExecutor) {
+            reportExecutor.shutdownNow();
+        }
+    }
+}
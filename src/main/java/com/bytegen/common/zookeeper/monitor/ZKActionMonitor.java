@@ -3,15 +3,16 @@ package com.bytegen.common.zookeeper.monitor;
 import com.bytegen.common.zookeeper.ZKActionType;
 import com.bytegen.common.zookeeper.ZKClient;
 import com.bytegen.common.zookeeper.ZKConstant;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.bytegen.common.zookeeper.ZKExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 /**
  * User: xiang
@@ -22,37 +23,53 @@ public class ZKActionMonitor {
     private static final Logger logger = LoggerFactory.getLogger(ZKActionMonitor.class);
 
     /**
-     * All action listeners, would receive the zk action events.
+     * All action listeners, would receive the zk action events. Copy on write, events are dispatched without locking.
      */
     private final List<ZKActionListener> subscribers;
 
+    /**
+     * Time spent in each subscriber, only recorded by the monitor thread
+     */
+    private final Map<ZKActionListener, Timing> timings = new ConcurrentHashMap<>();
+
     /**
      * Execute on action events
      */
     private final ExecutorService monitorExecutor;
 
     private ZKActionMonitor() {
-        subscribers = new ArrayList<>();
-        subscribers.add(new LoggerActionListener());
-
-        ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
-                .setNameFormat("zookeeper-monitor-subscribe-thread-%d")
-                .setUncaughtExceptionHandler(
-                        (t, e) -> logger.error(String.format("Zookeeper action monitor, thread[%s] throw : ", t.getName()), e))
-                .build();
-        monitorExecutor = Executors.newSingleThreadExecutor(namedThreadFactory);
+        subscribers = new CopyOnWriteArrayList<>();
+        addSubscriber(new LoggerActionListener());
+
+        // serial so subscribers see events in order; a virtual thread when enabled, see ZKExecutors
+        monitorExecutor = ZKExecutors.newSerialExecutor("zookeeper-monitor-subscribe-thread-%d", false);
     }
 
     public List<ZKActionListener> getSubscribers() {
         return subscribers;
     }
 
+    /**
+     * Time spent by each subscriber handling events, the slowest on average first.
+     * Subscribers are named by class and identity hash, so instances of one class are told apart.
+     */
+    public List<ZKListenerTiming> getSubscriberTimings() {
+        List<ZKListenerTiming> result = new ArrayList<>(timings.size());
+        for (Map.Entry<ZKActionListener, Timing> entry : timings.entrySet()) {
+            ZKActionListener listener = entry.getKey();
+            result.add(entry.getValue().snapshot(
+                    listener.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(listener))));
+        }
+        result.sort((a, b) -> Long.compare(b.getMeanNanos(), a.getMeanNanos()));
+        return result;
+    }
+
     class LoggerActionListener implements ZKActionListener {
 
         @Override
         public void onAction(ZKActionType type, ZKClient client, String path, Object data) {
-            logger.info("ZooKeeper event: type [{}], server [{}], path [{}], data [{}]",
-                    type.name(), client.getServer(), path, stringData(data));
+            logger.info("ZooKeeper event: type [{}], server [{}], namespace [{}], path [{}], data [{}]",
+                    type.name(), client.getServer(), client.getNamespace(), path, stringData(data));
         }
 
         private String stringData(Object data) {
@@ -87,6 +104,7 @@ public class ZKActionMonitor {
         if (listener == null) {
             return false;
         }
+        timings.putIfAbsent(listener, new Timing());
         return subscribers.add(listener);
     }
 
@@ -94,6 +112,7 @@ public class ZKActionMonitor {
         if (listener == null) {
             return false;
         }
+        timings.remove(listener);
         return subscribers.remove(listener);
     }
 
@@ -101,8 +120,40 @@ public class ZKActionMonitor {
                               String path, Object data) {
         monitorExecutor.execute(() -> {
             for (ZKActionListener listener : subscribers) {
-                listener.onAction(type, client, path, data);
+                long start = System.nanoTime();
+                try {
+                    listener.onAction(type, client, path, data);
+                } catch (RuntimeException e) {
+                    logger.error("ZooKeeper action subscriber " + listener.getClass().getName() + " failed.", e);
+                } finally {
+                    Timing timing = timings.get(listener);
+                    // null once removed meanwhile
+                    if (null != timing) {
+                        timing.record(System.nanoTime() - start);
+                    }
+                }
             }
         });
     }
+
+    /**
+     * Synchronized so a snapshot never pairs the count of one event with the total of another
+     */
+    private static final class Timing {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        private synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        private synchronized ZKListenerTiming snapshot(String listener) {
+            return new ZKListenerTiming(listener, count, totalNanos, maxNanos);
+        }
+    }
 }
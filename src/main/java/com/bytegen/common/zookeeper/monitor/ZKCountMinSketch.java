@@ -0,0 +1,80 @@
+package com.bytegen.common.zookeeper.monitor;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.Validate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Count-min sketch of string keys with conservative update. Estimates never undercount, and overcount by
+ * at most about e/width of the total with probability 1 - e^-depth. Not thread safe.
+ */
+final class ZKCountMinSketch {
+    private static final int SEED = 0x5bd1e995;
+
+    private final int width;
+    private final long[][] counters;
+    /**
+     * One independently seeded hash per row, so keys colliding in one row rarely collide in the others
+     */
+    private final HashFunction[] hashes;
+
+    ZKCountMinSketch(int width, int depth) {
+        Validate.isTrue(width > 0 && Integer.bitCount(width) == 1, "Sketch width must be a power of two.");
+        Validate.isTrue(depth > 0, "Sketch depth must be positive.");
+        this.width = width;
+        this.counters = new long[depth][width];
+        this.hashes = new HashFunction[depth];
+        for (int i = 0; i < depth; i++) {
+            hashes[i] = Hashing.murmur3_32(SEED + i);
+        }
+    }
+
+    /**
+     * Count the key.
+     *
+     * @return estimated count of the key after adding
+     */
+    long add(String key, long count) {
+        int[] indexes = indexes(key);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < counters.length; i++) {
+            estimate = Math.min(estimate, counters[i][indexes[i]]);
+        }
+        // conservative update: raise only the counters below the new estimate
+        long updated = estimate + count;
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i][indexes[i]] < updated) {
+                counters[i][indexes[i]] = updated;
+            }
+        }
+        return updated;
+    }
+
+    long estimate(String key) {
+        int[] indexes = indexes(key);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < counters.length; i++) {
+            estimate = Math.min(estimate, counters[i][indexes[i]]);
+        }
+        return estimate;
+    }
+
+    void clear() {
+        for (long[] row : counters) {
+            Arrays.fill(row, 0L);
+        }
+    }
+
+    private int[] indexes(String key) {
+        int[] indexes = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            indexes[i] = hashes[i].hashString(key, StandardCharsets.UTF_8).asInt() & (width - 1);
+        }
+        return indexes;
+    }
+}
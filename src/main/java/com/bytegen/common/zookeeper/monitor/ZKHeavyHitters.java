@@ -0,0 +1,86 @@
+package com.bytegen.common.zookeeper.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Top keys by count in constant memory. All keys are counted in a count-min sketch, and a key enters the
+ * top set once its estimate exceeds the smallest count in it. Not thread safe.
+ */
+final class ZKHeavyHitters {
+
+    private final ZKCountMinSketch sketch;
+    private final int capacity;
+    private final Map<String, long[]> top;
+    /**
+     * Lower bound of the smallest count in the top set, counts there only grow
+     */
+    private long minCount;
+
+    ZKHeavyHitters(int capacity, int width, int depth) {
+        this.sketch = new ZKCountMinSketch(width, depth);
+        this.capacity = capacity;
+        this.top = new HashMap<>(capacity * 2);
+    }
+
+    void add(String key) {
+        long estimate = sketch.add(key, 1);
+        long[] count = top.get(key);
+        if (null != count) {
+            count[0] = estimate;
+            return;
+        }
+        if (top.size() < capacity) {
+            minCount = top.isEmpty() ? estimate : Math.min(minCount, estimate);
+            top.put(key, new long[]{estimate});
+            return;
+        }
+        if (estimate <= minCount) {
+            return;
+        }
+        String minKey = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<String, long[]> entry : top.entrySet()) {
+            if (entry.getValue()[0] < min) {
+                min = entry.getValue()[0];
+                minKey = entry.getKey();
+            }
+        }
+        if (estimate <= min) {
+            minCount = min;
+            return;
+        }
+        top.remove(minKey);
+        top.put(key, new long[]{estimate});
+        minCount = estimate;
+        for (long[] value : top.values()) {
+            minCount = Math.min(minCount, value[0]);
+        }
+    }
+
+    long estimate(String key) {
+        return sketch.estimate(key);
+    }
+
+    /**
+     * Top keys, the most counted first.
+     */
+    List<ZKAccessReport.HotKey> top() {
+        List<ZKAccessReport.HotKey> keys = new ArrayList<>(top.size());
+        for (Map.Entry<String, long[]> entry : top.entrySet()) {
+            keys.add(new ZKAccessReport.HotKey(entry.getKey(), entry.getValue()[0]));
+        }
+        keys.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return keys;
+    }
+
+    void clear() {
+        sketch.clear();
+        top.clear();
+        minCount = 0;
+    }
+}
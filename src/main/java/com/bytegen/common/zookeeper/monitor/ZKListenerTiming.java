@@ -0,0 +1,46 @@
+package com.bytegen.common.zookeeper.monitor;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Time spent by one action subscriber handling monitor events.
+ */
+public final class ZKListenerTiming {
+
+    private final String listener;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    ZKListenerTiming(String listener, long count, long totalNanos, long maxNanos) {
+        this.listener = listener;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getListener() {
+        return listener;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        return 0 == count ? 0 : totalNanos / count;
+    }
+
+    @Override
+    public String toString() {
+        return listener + "{count=" + count + ", meanNanos=" + getMeanNanos() + ", maxNanos=" + maxNanos + "}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.bytegen.common.zookeeper.path;
+
+import com.bytegen.common.zookeeper.ZKConstant;
+import com.google.common.collect.MapMaker;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.curator.utils.ZKPaths;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Normalized, interned node path. Both the raw path and the normalized path map to the same instance,
+ * so resolving a path already seen is one map lookup without building strings; segments are split once.
+ * The intern table holds its paths weakly, so paths no longer used (e.g. sequential nodes) are dropped by the GC.
+ */
+public final class ZKPath {
+
+    private static final ConcurrentMap<String, ZKPath> INTERNED = new MapMaker().weakValues().makeMap();
+
+    public static final ZKPath ROOT = of(ZKConstant.PATH_SEPERATOR);
+
+    private final String path;
+    private final String[] segments;
+
+    private ZKPath(String path) {
+        this.path = path;
+        this.segments = ZKConstant.PATH_SEPERATOR.equals(path)
+                ? new String[0] : StringUtils.split(path, ZKConstant.PATH_SEPERATOR);
+    }
+
+    public static ZKPath of(String rawPath) {
+        if (null == rawPath) {
+            return ROOT;
+        }
+        ZKPath interned = INTERNED.get(rawPath);
+        if (null != interned) {
+            return interned;
+        }
+
+        String normalized = ZKPaths.makePath(rawPath, null);
+        ZKPath zkPath = INTERNED.get(normalized);
+        if (null == zkPath) {
+            zkPath = new ZKPath(normalized);
+            ZKPath existing = INTERNED.putIfAbsent(normalized, zkPath);
+            if (null != existing) {
+                zkPath = existing;
+            }
+        }
+        if (!normalized.equals(rawPath)) {
+            INTERNED.putIfAbsent(rawPath, zkPath);
+        }
+        return zkPath;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Node names from the root, empty for the root.
+     */
+    String[] segments() {
+        return segments;
+    }
+
+    public int getDepth() {
+        return segments.length;
+    }
+
+    public boolean isRoot() {
+        return segments.length == 0;
+    }
+
+    /**
+     * @return null for the root
+     */
+    public ZKPath getParent() {
+        if (isRoot()) {
+            return null;
+        }
+        return of(ZKPaths.getPathAndNode(path).getPath());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof ZKPath && path.equals(((ZKPath) o).path));
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,74 @@
+package com.bytegen.common.zookeeper.path;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Concurrent prefix trie by path segments, resolving exact and closest ancestor lookups
+ * without scanning registered paths. Reads take no locks; nodes emptied by remove are kept for reuse.
+ */
+public final class ZKPathTrie<V> {
+
+    private final Node<V> root = new Node<>();
+
+    public V put(ZKPath path, V value) {
+        Node<V> node = root;
+        for (String segment : path.segments()) {
+            node = node.children.computeIfAbsent(segment, s -> new Node<>());
+        }
+        V previous = node.value;
+        node.value = value;
+        return previous;
+    }
+
+    public V get(ZKPath path) {
+        Node<V> node = find(path);
+        return null == node ? null : node.value;
+    }
+
+    public V remove(ZKPath path) {
+        Node<V> node = find(path);
+        if (null == node) {
+            return null;
+        }
+        V previous = node.value;
+        node.value = null;
+        return previous;
+    }
+
+    /**
+     * Value of the path itself or of its closest ancestor which has one.
+     */
+    public V getClosest(ZKPath path) {
+        Node<V> node = root;
+        V closest = node.value;
+        for (String segment : path.segments()) {
+            node = node.children.get(segment);
+            if (null == node) {
+                break;
+            }
+            if (null != node.value) {
+                closest = node.value;
+            }
+        }
+        return closest;
+    }
+
+    private Node<V> find(ZKPath path) {
+        Node<V> node = root;
+        for (String segment : path.segments()) {
+            node = node.children.get(segment);
+            if (null == node) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static final class Node<V> {
+        private final ConcurrentMap<String, Node<V>> children = new ConcurrentHashMap<>();
+        private volatile V value;
+    }
+}
@@ -0,0 +1,37 @@
+package com.bytegen.common.zookeeper.serializer;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: 1 byte boolean, 1 for true and 0 for false.
+ */
+public class BooleanSerializer implements ZKDataSerializer<Boolean> {
+
+    private BooleanSerializer() {
+    }
+
+    private static final BooleanSerializer instance = new BooleanSerializer();
+
+    public static BooleanSerializer getInstance() {
+        return instance;
+    }
+
+    public boolean decode(byte[] bytes) {
+        ZKBinaryCodec.checkLength(bytes, 1, "boolean");
+        return bytes[0] != 0;
+    }
+
+    public byte[] encode(boolean data) {
+        return new byte[]{data ? (byte) 1 : (byte) 0};
+    }
+
+    @Override
+    public Boolean deserialize(byte[] bytes) {
+        return decode(bytes);
+    }
+
+    @Override
+    public byte[] serialize(Boolean data) {
+        return encode(data);
+    }
+}
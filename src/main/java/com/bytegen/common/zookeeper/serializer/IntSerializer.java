@@ -0,0 +1,48 @@
+package com.bytegen.common.zookeeper.serializer;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: 4 bytes big-endian int. Use {@link #encode(int)} and {@link #decode(byte[])} to avoid boxing.
+ */
+public class IntSerializer implements ZKDataSerializer<Integer> {
+
+    public static final int BYTES = 4;
+
+    private IntSerializer() {
+    }
+
+    private static final IntSerializer instance = new IntSerializer();
+
+    public static IntSerializer getInstance() {
+        return instance;
+    }
+
+    public int decode(byte[] bytes) {
+        ZKBinaryCodec.checkLength(bytes, BYTES, "int");
+        return ZKBinaryCodec.getInt(bytes, 0);
+    }
+
+    public byte[] encode(int data) {
+        byte[] bytes = new byte[BYTES];
+        ZKBinaryCodec.putInt(bytes, 0, data);
+        return bytes;
+    }
+
+    /**
+     * @return offset after the encoded value
+     */
+    public int encode(int data, byte[] buffer, int offset) {
+        return ZKBinaryCodec.putInt(buffer, offset, data);
+    }
+
+    @Override
+    public Integer deserialize(byte[] bytes) {
+        return decode(bytes);
+    }
+
+    @Override
+    public byte[] serialize(Integer data) {
+        return encode(data);
+    }
+}
@@ -0,0 +1,50 @@
+package com.bytegen.common.zookeeper.serializer;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: 8 bytes big-endian long. Use {@link #encode(long)} and {@link #decode(byte[])} to avoid boxing on hot counters.
+ */
+public class LongSerializer implements ZKDataSerializer<Long> {
+
+    public static final int BYTES = 8;
+
+    private LongSerializer() {
+    }
+
+    private static final LongSerializer instance = new LongSerializer();
+
+    public static LongSerializer getInstance() {
+        return instance;
+    }
+
+    public long decode(byte[] bytes) {
+        ZKBinaryCodec.checkLength(bytes, BYTES, "long");
+        return ZKBinaryCodec.getLong(bytes, 0);
+    }
+
+    public byte[] encode(long data) {
+        byte[] bytes = new byte[BYTES];
+        ZKBinaryCodec.putLong(bytes, 0, data);
+        return bytes;
+    }
+
+    /**
+     * Encode into the buffer, e.g. one reused per thread.
+     *
+     * @return offset after the encoded value
+     */
+    public int encode(long data, byte[] buffer, int offset) {
+        return ZKBinaryCodec.putLong(buffer, offset, data);
+    }
+
+    @Override
+    public Long deserialize(byte[] bytes) {
+        return decode(bytes);
+    }
+
+    @Override
+    public byte[] serialize(Long data) {
+        return encode(data);
+    }
+}
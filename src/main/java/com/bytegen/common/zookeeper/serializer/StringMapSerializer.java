@@ -0,0 +1,53 @@
+package com.bytegen.common.zookeeper.serializer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Compact binary Map of strings: a format byte, the varint entry count, then each key and value as
+ * varint length-prefixed UTF-8. No escaping or comments as PropertiesSerializer; the entry order is kept.
+ */
+public class StringMapSerializer implements ZKDataSerializer<Map<String, String>> {
+
+    private static final int FORMAT = 1;
+
+    private StringMapSerializer() {
+    }
+
+    private static final StringMapSerializer instance = new StringMapSerializer();
+
+    public static StringMapSerializer getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Map<String, String> deserialize(byte[] bytes) {
+        ZKBinaryReader reader = new ZKBinaryReader(bytes);
+        Validate.isTrue(reader.readByte() == FORMAT, "Unknown string map format.");
+        int size = reader.readLength();
+        Map<String, String> data = new LinkedHashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            data.put(reader.readString(), reader.readString());
+        }
+        return data;
+    }
+
+    @Override
+    public byte[] serialize(Map<String, String> data) {
+        Validate.notNull(data, "Data can't be null.");
+        ZKBinaryWriter writer = new ZKBinaryWriter(16 + data.size() * 32);
+        writer.writeByte(FORMAT);
+        writer.writeVarint(data.size());
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            Validate.notNull(entry.getKey(), "Key can't be null.");
+            Validate.notNull(entry.getValue(), "Value of %s can't be null.", entry.getKey());
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+        return writer.toByteArray();
+    }
+}
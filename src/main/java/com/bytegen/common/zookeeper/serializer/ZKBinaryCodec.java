@@ -0,0 +1,48 @@
+package com.bytegen.common.zookeeper.serializer;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Big-endian fixed width encoding of the primitive serializers.
+ */
+final class ZKBinaryCodec {
+
+    private ZKBinaryCodec() {
+    }
+
+    static int putLong(byte[] buffer, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+        return offset + 8;
+    }
+
+    static long getLong(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static int putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF);
+    }
+
+    static void checkLength(byte[] bytes, int length, String type) {
+        Validate.notNull(bytes, "Bytes can't be null.");
+        Validate.isTrue(bytes.length == length, "Malformed %s data, %s bytes expected but %s.", type, length, bytes.length);
+    }
+}
@@ -0,0 +1,79 @@
+package com.bytegen.common.zookeeper.serializer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Reader of the data written by {@link ZKBinaryWriter}.
+ */
+final class ZKBinaryReader {
+
+    private final byte[] bytes;
+    private int position;
+
+    ZKBinaryReader(byte[] bytes) {
+        Validate.notNull(bytes, "Bytes can't be null.");
+        this.bytes = bytes;
+    }
+
+    boolean hasRemaining() {
+        return position < bytes.length;
+    }
+
+    int readByte() {
+        require(1);
+        return bytes[position++] & 0xFF;
+    }
+
+    long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+    long readFixed64() {
+        require(8);
+        long value = ZKBinaryCodec.getLong(bytes, position);
+        position += 8;
+        return value;
+    }
+
+    byte[] readBytes() {
+        int length = readLength();
+        byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+        position += length;
+        return value;
+    }
+
+    String readString() {
+        int length = readLength();
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    void skip(int length) {
+        require(length);
+        position += length;
+    }
+
+    int readLength() {
+        long length = readVarint();
+        Validate.isTrue(length >= 0 && length <= bytes.length - position, "Malformed length: %s", length);
+        return (int) length;
+    }
+
+    private void require(int length) {
+        Validate.isTrue(bytes.length - position >= length, "Unexpected end of data.");
+    }
+}
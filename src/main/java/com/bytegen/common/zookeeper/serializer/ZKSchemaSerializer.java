@@ -0,0 +1,289 @@
+package com.bytegen.common.zookeeper.serializer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Compact binary serializer of POJOs with an explicit schema of tagged fields, without reflection.
+ * Each field is written as a varint key (tag and wire type) and its value: zigzag varint for int/long/boolean,
+ * fixed 64 bits for double, length-prefixed for string/bytes/nested values. Null fields are not written.
+ * Unknown tags are skipped and missing fields keep the value of the new instance, so fields can be added or
+ * removed without breaking the other side; tags must not be reused for another type.
+ * <pre>
+ * ZKSchemaSerializer&lt;Server&gt; serializer = ZKSchemaSerializer.builder(Server::new)
+ *         .stringField(1, Server::getHost, Server::setHost)
+ *         .intField(2, Server::getPort, Server::setPort)
+ *         .booleanField(3, Server::isEnabled, Server::setEnabled)
+ *         .build();
+ * </pre>
+ */
+public final class ZKSchemaSerializer<T> implements ZKDataSerializer<T> {
+
+    private static final int FORMAT = 1;
+    private static final int MAX_TAG = 1024;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH = 2;
+
+    private final Supplier<T> factory;
+    private final List<Field<T>> fields;
+    /**
+     * Fields indexed by tag, null for unused tags
+     */
+    private final List<Field<T>> fieldsByTag;
+
+    private ZKSchemaSerializer(Supplier<T> factory, List<Field<T>> fields) {
+        this.factory = factory;
+        this.fields = new ArrayList<>(fields);
+        int maxTag = 0;
+        for (Field<T> field : fields) {
+            maxTag = Math.max(maxTag, field.tag);
+        }
+        this.fieldsByTag = new ArrayList<>(Collections.nCopies(maxTag + 1, null));
+        for (Field<T> field : fields) {
+            fieldsByTag.set(field.tag, field);
+        }
+    }
+
+    public static <T> Builder<T> builder(Supplier<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) {
+        ZKBinaryReader reader = new ZKBinaryReader(bytes);
+        Validate.isTrue(reader.readByte() == FORMAT, "Unknown schema format.");
+        T data = factory.get();
+        while (reader.hasRemaining()) {
+            long key = reader.readVarint();
+            long tag = key >>> 3;
+            int wireType = (int) (key & 0x7);
+            Field<T> field = tag < fieldsByTag.size() ? fieldsByTag.get((int) tag) : null;
+            if (null != field && field.wireType == wireType) {
+                field.read(data, reader);
+            } else {
+                skip(reader, wireType);
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public byte[] serialize(T data) {
+        Validate.notNull(data, "Data can't be null.");
+        ZKBinaryWriter writer = new ZKBinaryWriter(16 + fields.size() * 8);
+        writer.writeByte(FORMAT);
+        for (Field<T> field : fields) {
+            field.write(data, writer);
+        }
+        return writer.toByteArray();
+    }
+
+    private static void skip(ZKBinaryReader reader, int wireType) {
+        switch (wireType) {
+            case WIRE_VARINT:
+                reader.readVarint();
+                break;
+            case WIRE_FIXED64:
+                reader.skip(8);
+                break;
+            case WIRE_LENGTH:
+                reader.skip(reader.readLength());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown wire type: " + wireType);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Setter of a boolean field, as {@link ObjIntConsumer} for int.
+     */
+    public interface ObjBooleanConsumer<T> {
+        void accept(T target, boolean value);
+    }
+
+    public static final class Builder<T> {
+        private final Supplier<T> factory;
+        private final List<Field<T>> fields = new ArrayList<>();
+        private final boolean[] usedTags = new boolean[MAX_TAG + 1];
+
+        private Builder(Supplier<T> factory) {
+            Validate.notNull(factory, "Factory can't be null.");
+            this.factory = factory;
+        }
+
+        public Builder<T> intField(int tag, ToIntFunction<T> getter, ObjIntConsumer<T> setter) {
+            return add(new Field<T>(tag, WIRE_VARINT) {
+                @Override
+                void write(T data, ZKBinaryWriter writer) {
+                    writeKey(writer);
+                    writer.writeVarint(zigzag(getter.applyAsInt(data)));
+                }
+
+                @Override
+                void read(T data, ZKBinaryReader reader) {
+                    setter.accept(data, (int) unzigzag(reader.readVarint()));
+                }
+            }, getter, setter);
+        }
+
+        public Builder<T> longField(int tag, ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+            return add(new Field<T>(tag, WIRE_VARINT) {
+                @Override
+                void write(T data, ZKBinaryWriter writer) {
+                    writeKey(writer);
+                    writer.writeVarint(zigzag(getter.applyAsLong(data)));
+                }
+
+                @Override
+                void read(T data, ZKBinaryReader reader) {
+                    setter.accept(data, unzigzag(reader.readVarint()));
+                }
+            }, getter, setter);
+        }
+
+        public Builder<T> booleanField(int tag, Predicate<T> getter, ObjBooleanConsumer<T> setter) {
+            return add(new Field<T>(tag, WIRE_VARINT) {
+                @Override
+                void write(T data, ZKBinaryWriter writer) {
+                    writeKey(writer);
+                    writer.writeVarint(getter.test(data) ? 1 : 0);
+                }
+
+                @Override
+                void read(T data, ZKBinaryReader reader) {
+                    setter.accept(data, reader.readVarint() != 0);
+                }
+            }, getter, setter);
+        }
+
+        public Builder<T> doubleField(int tag, ToDoubleFunction<T> getter, ObjDoubleConsumer<T> setter) {
+            return add(new Field<T>(tag, WIRE_FIXED64) {
+                @Override
+                void write(T data, ZKBinaryWriter writer) {
+                    writeKey(writer);
+                    writer.writeFixed64(Double.doubleToLongBits(getter.applyAsDouble(data)));
+                }
+
+                @Override
+                void read(T data, ZKBinaryReader reader) {
+                    setter.accept(data, Double.longBitsToDouble(reader.readFixed64()));
+                }
+            }, getter, setter);
+        }
+
+        public Builder<T> stringField(int tag, Function<T, String> getter, BiConsumer<T, String> setter) {
+            return add(new Field<T>(tag, WIRE_LENGTH) {
+                @Override
+                void write(T data, ZKBinaryWriter writer) {
+                    String value = getter.apply(data);
+                    if (null != value) {
+                        writeKey(writer);
+                        writer.writeString(value);
+                    }
+                }
+
+                @Override
+                void read(T data, ZKBinaryReader reader) {
+                    setter.accept(data, reader.readString());
+                }
+            }, getter, setter);
+        }
+
+        public Builder<T> bytesField(int tag, Function<T, byte[]> getter, BiConsumer<T, byte[]> setter) {
+            return field(tag, getter, setter, BytesSerializer.INSTANCE);
+        }
+
+        /**
+         * Field of any type, nested as the bytes of its serializer, e.g. another schema serializer or a map.
+         */
+        public <V> Builder<T> field(int tag, Function<T, V> getter, BiConsumer<T, V> setter, ZKDataSerializer<V> serializer) {
+            Validate.notNull(serializer, "Serializer can't be null.");
+            return add(new Field<T>(tag, WIRE_LENGTH) {
+                @Override
+                void write(T data, ZKBinaryWriter writer) {
+                    V value = getter.apply(data);
+                    if (null != value) {
+                        writeKey(writer);
+                        writer.writeBytes(serializer.serialize(value));
+                    }
+                }
+
+                @Override
+                void read(T data, ZKBinaryReader reader) {
+                    setter.accept(data, serializer.deserialize(reader.readBytes()));
+                }
+            }, getter, setter);
+        }
+
+        public ZKSchemaSerializer<T> build() {
+            return new ZKSchemaSerializer<>(factory, fields);
+        }
+
+        private Builder<T> add(Field<T> field, Object getter, Object setter) {
+            Validate.notNull(getter, "Getter of field %s can't be null.", field.tag);
+            Validate.notNull(setter, "Setter of field %s can't be null.", field.tag);
+            Validate.inclusiveBetween(1, MAX_TAG, field.tag, "Field tag must be in [1, " + MAX_TAG + "].");
+            Validate.isTrue(!usedTags[field.tag], "Duplicated field tag: %s", field.tag);
+            usedTags[field.tag] = true;
+            fields.add(field);
+            return this;
+        }
+    }
+
+    private abstract static class Field<T> {
+        final int tag;
+        final int wireType;
+
+        Field(int tag, int wireType) {
+            this.tag = tag;
+            this.wireType = wireType;
+        }
+
+        void writeKey(ZKBinaryWriter writer) {
+            writer.writeVarint(((long) tag << 3) | wireType);
+        }
+
+        abstract void write(T data, ZKBinaryWriter writer);
+
+        abstract void read(T data, ZKBinaryReader reader);
+    }
+
+    private static final class BytesSerializer implements ZKDataSerializer<byte[]> {
+        private static final BytesSerializer INSTANCE = new BytesSerializer();
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] serialize(byte[] data) {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.bytegen.common.zookeeper.snapshot;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Immutable hash array mapped trie of String keys. Updates return a new map sharing all untouched
+ * branches with the old one, so each costs O(log32 n) copies and old versions stay valid and cheap to keep.
+ */
+public final class ZKPersistentMap<V> {
+
+    private static final ZKPersistentMap<?> EMPTY = new ZKPersistentMap<>(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final BitmapNode root;
+    private final int size;
+
+    private ZKPersistentMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> ZKPersistentMap<V> empty() {
+        return (ZKPersistentMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        Validate.notNull(key, "Key can't be null.");
+        if (null == root) {
+            return null;
+        }
+        Leaf leaf = root.find(hash(key), 0, key);
+        return null == leaf ? null : (V) leaf.value;
+    }
+
+    public boolean containsKey(String key) {
+        return null != root && null != root.find(hash(key), 0, key);
+    }
+
+    /**
+     * @return map with the key mapped to the value, this map itself if it is already
+     */
+    public ZKPersistentMap<V> plus(String key, V value) {
+        Validate.notNull(key, "Key can't be null.");
+        Validate.notNull(value, "Value can't be null.");
+        int[] added = new int[1];
+        BitmapNode node = (null == root ? BitmapNode.EMPTY : root).put(hash(key), 0, new Leaf(key, hash(key), value), added);
+        return node == root ? this : new ZKPersistentMap<>(node, size + added[0]);
+    }
+
+    /**
+     * @return map without the key, this map itself if it has no such key
+     */
+    public ZKPersistentMap<V> minus(String key) {
+        Validate.notNull(key, "Key can't be null.");
+        if (null == root) {
+            return this;
+        }
+        Object slot = root.remove(hash(key), 0, key);
+        if (slot == root) {
+            return this;
+        }
+        if (null == slot) {
+            return empty();
+        }
+        BitmapNode node = slot instanceof BitmapNode ? (BitmapNode) slot : BitmapNode.EMPTY.put(((Leaf) slot).hash, 0, (Leaf) slot, new int[1]);
+        return new ZKPersistentMap<>(node, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<String, ? super V> action) {
+        if (null != root) {
+            root.forEach((BiConsumer<String, Object>) action);
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Leaf {
+        private final String key;
+        private final int hash;
+        private final Object value;
+
+        private Leaf(String key, int hash, Object value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private interface Node {
+        Leaf find(int hash, int shift, String key);
+
+        Node put(int hash, int shift, Leaf leaf, int[] added);
+
+        /**
+         * @return this if unchanged, null if emptied, a Leaf if only one is left, or the new node
+         */
+        Object remove(int hash, int shift, String key);
+
+        void forEach(BiConsumer<String, Object> action);
+    }
+
+    private static final class BitmapNode implements Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        /**
+         * Leaf or Node per set bit
+         */
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        public Leaf find(int hash, int shift, String key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key.equals(key) ? leaf : null;
+            }
+            return ((Node) slot).find(hash, shift + BITS, key);
+        }
+
+        @Override
+        public BitmapNode put(int hash, int shift, Leaf leaf, int[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = leaf;
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                added[0] = 1;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object slot = slots[index];
+            Object replaced;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                if (existing.key.equals(leaf.key)) {
+                    if (existing.value == leaf.value) {
+                        return this;
+                    }
+                    replaced = leaf;
+                } else {
+                    added[0] = 1;
+                    replaced = merge(existing, leaf, shift + BITS);
+                }
+            } else {
+                Node child = (Node) slot;
+                replaced = child.put(hash, shift + BITS, leaf, added);
+                if (replaced == child) {
+                    return this;
+                }
+            }
+            Object[] copy = slots.clone();
+            copy[index] = replaced;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public Object remove(int hash, int shift, String key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            Object replaced;
+            if (slot instanceof Leaf) {
+                if (!((Leaf) slot).key.equals(key)) {
+                    return this;
+                }
+                replaced = null;
+            } else {
+                replaced = ((Node) slot).remove(hash, shift + BITS, key);
+                if (replaced == slot) {
+                    return this;
+                }
+            }
+            if (null == replaced) {
+                if (slots.length == 1) {
+                    return null;
+                }
+                if (slots.length == 2 && slots[1 - index] instanceof Leaf) {
+                    return slots[1 - index];
+                }
+                Object[] copy = new Object[slots.length - 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+                return new BitmapNode(bitmap & ~bit, copy);
+            }
+            if (slots.length == 1 && replaced instanceof Leaf) {
+                return replaced;
+            }
+            Object[] copy = slots.clone();
+            copy[index] = replaced;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<String, Object> action) {
+            for (Object slot : slots) {
+                if (slot instanceof Leaf) {
+                    action.accept(((Leaf) slot).key, ((Leaf) slot).value);
+                } else {
+                    ((Node) slot).forEach(action);
+                }
+            }
+        }
+
+        private static Node merge(Leaf first, Leaf second, int shift) {
+            if (first.hash == second.hash || shift >= 32) {
+                return new CollisionNode(new Leaf[]{first, second});
+            }
+            int[] added = new int[1];
+            return EMPTY.put(first.hash, shift, first, added).put(second.hash, shift, second, added);
+        }
+    }
+
+    /**
+     * Leaves of one full hash
+     */
+    private static final class CollisionNode implements Node {
+        private final Leaf[] leaves;
+
+        private CollisionNode(Leaf[] leaves) {
+            this.leaves = leaves;
+        }
+
+        @Override
+        public Leaf find(int hash, int shift, String key) {
+            for (Leaf leaf : leaves) {
+                if (leaf.key.equals(key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(int hash, int shift, Leaf leaf, int[] added) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    if (leaves[i].value == leaf.value) {
+                        return this;
+                    }
+                    Leaf[] copy = leaves.clone();
+                    copy[i] = leaf;
+                    return new CollisionNode(copy);
+                }
+            }
+            Leaf[] copy = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, copy, 0, leaves.length);
+            copy[leaves.length] = leaf;
+            added[0] = 1;
+            return new CollisionNode(copy);
+        }
+
+        @Override
+        public Object remove(int hash, int shift, String key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (Objects.equals(leaves[i].key, key)) {
+                    if (leaves.length == 2) {
+                        return leaves[1 - i];
+                    }
+                    Leaf[] copy = new Leaf[leaves.length - 1];
+                    System.arraycopy(leaves, 0, copy, 0, i);
+                    System.arraycopy(leaves, i + 1, copy, i, leaves.length - i - 1);
+                    return new CollisionNode(copy);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public void forEach(BiConsumer<String, Object> action) {
+            for (Leaf leaf : leaves) {
+                action.accept(leaf.key, leaf.value);
+            }
+        }
+    }
+}
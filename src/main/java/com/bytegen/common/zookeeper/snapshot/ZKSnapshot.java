@@ -0,0 +1,137 @@
+package com.bytegen.common.zookeeper.snapshot;
+
+import com.bytegen.common.zookeeper.ZKConstant;
+import com.bytegen.common.zookeeper.transfer.ZKNodeChange;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Immutable, version-consistent state of a watched subtree, published by {@link ZKSubtreeView}.
+ * Paths are the real paths of the client, as {@link com.bytegen.common.zookeeper.ZKClient#getRealPath}.
+ */
+public final class ZKSnapshot {
+
+    private static final String[] NO_SEGMENTS = new String[0];
+
+    private final String rootPath;
+    private final ZKSnapshotNode root;
+    private final long zxid;
+    private final long version;
+    private final long timestamp;
+
+    ZKSnapshot(String rootPath, ZKSnapshotNode root, long zxid, long version, long timestamp) {
+        this.rootPath = rootPath;
+        this.root = root;
+        this.zxid = zxid;
+        this.version = version;
+        this.timestamp = timestamp;
+    }
+
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * Root node, null if it does not exist.
+     */
+    public ZKSnapshotNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Highest zxid of the node states in the snapshot.
+     */
+    public long getZxid() {
+        return zxid;
+    }
+
+    /**
+     * Sequence of the snapshot in its view, from 1.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public ZKSnapshotNode getNode(String realPath) {
+        ZKSnapshotNode node = root;
+        for (String segment : segments(rootPath, realPath)) {
+            if (null == node) {
+                return null;
+            }
+            node = node.getChild(segment);
+        }
+        return node;
+    }
+
+    public byte[] getData(String realPath) {
+        ZKSnapshotNode node = getNode(realPath);
+        return null == node ? null : node.getData();
+    }
+
+    public List<String> getChildrenNames(String realPath) {
+        ZKSnapshotNode node = getNode(realPath);
+        return null == node ? Collections.emptyList() : node.getChildrenNames();
+    }
+
+    /**
+     * Changes which turn the tree of a snapshot into the tree of another one of the same root,
+     * with paths relative to the root. Subtrees shared by both snapshots are skipped without visiting them.
+     */
+    public static List<ZKNodeChange> diff(ZKSnapshot from, ZKSnapshot to) {
+        Validate.isTrue(from.rootPath.equals(to.rootPath), "Snapshots of different roots.");
+        List<ZKNodeChange> changes = new ArrayList<>();
+        diff(from.root, to.root, ZKConstant.PATH_SEPERATOR, changes);
+        return changes;
+    }
+
+    private static void diff(ZKSnapshotNode from, ZKSnapshotNode to, String path, List<ZKNodeChange> changes) {
+        if (from == to) {
+            return;
+        }
+        if (null == to) {
+            changes.add(new ZKNodeChange(ZKNodeChange.Type.DELETE, path, null));
+            return;
+        }
+        if (null == from) {
+            changes.add(new ZKNodeChange(ZKNodeChange.Type.CREATE, path, null == to.getData() ? new byte[0] : to.getData()));
+        } else if (null != to.getData() && !Arrays.equals(from.getData(), to.getData())) {
+            changes.add(new ZKNodeChange(ZKNodeChange.Type.UPDATE, path, to.getData()));
+        }
+        String prefix = ZKConstant.PATH_SEPERATOR.equals(path) ? path : path + ZKConstant.PATH_SEPERATOR;
+        to.getChildren().forEach((name, child) -> diff(null == from ? null : from.getChild(name), child, prefix + name, changes));
+        if (null != from) {
+            from.getChildren().forEach((name, child) -> {
+                if (!to.getChildren().containsKey(name)) {
+                    changes.add(new ZKNodeChange(ZKNodeChange.Type.DELETE, prefix + name, null));
+                }
+            });
+        }
+    }
+
+    /**
+     * Segments of the path below the root.
+     */
+    static String[] segments(String rootPath, String realPath) {
+        Validate.isTrue(realPath.equals(rootPath) || ZKConstant.PATH_SEPERATOR.equals(rootPath)
+                || realPath.startsWith(rootPath + ZKConstant.PATH_SEPERATOR), "Path %s is not under %s", realPath, rootPath);
+        String relative = realPath.substring(ZKConstant.PATH_SEPERATOR.equals(rootPath) ? 0 : rootPath.length());
+        return relative.isEmpty() || ZKConstant.PATH_SEPERATOR.equals(relative)
+                ? NO_SEGMENTS : StringUtils.split(relative, ZKConstant.PATH_SEPERATOR);
+    }
+
+    @Override
+    public String toString() {
+        return "ZKSnapshot{root=" + rootPath + ", version=" + version + ", zxid=0x" + Long.toHexString(zxid) + "}";
+    }
+}
@@ -0,0 +1,14 @@
+package com.bytegen.common.zookeeper.snapshot;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Listener of the snapshots published by a {@link ZKSubtreeView}, called in publish order.
+ */
+public interface ZKSnapshotListener {
+
+    /**
+     * @param previous snapshot replaced, null for the first one
+     */
+    void snapshotPublished(ZKSnapshot previous, ZKSnapshot current) throws Exception;
+}
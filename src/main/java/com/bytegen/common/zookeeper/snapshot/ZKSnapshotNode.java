@@ -0,0 +1,91 @@
+package com.bytegen.common.zookeeper.snapshot;
+
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Immutable node of a snapshot. Changing a node copies it and its ancestors only, the rest of the tree
+ * is shared with the previous snapshot, so unchanged subtrees of two snapshots are the same instances.
+ * Data arrays are shared as well and must not be modified.
+ */
+public final class ZKSnapshotNode {
+
+    private final String name;
+    private final byte[] data;
+    private final Stat stat;
+    private final ZKPersistentMap<ZKSnapshotNode> children;
+
+    ZKSnapshotNode(String name, byte[] data, Stat stat, ZKPersistentMap<ZKSnapshotNode> children) {
+        this.name = name;
+        this.data = data;
+        this.stat = stat;
+        this.children = children;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Data of the node, null if the node was only seen as a parent so far.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public Stat getStat() {
+        return stat;
+    }
+
+    public ZKPersistentMap<ZKSnapshotNode> getChildren() {
+        return children;
+    }
+
+    public ZKSnapshotNode getChild(String name) {
+        return children.get(name);
+    }
+
+    public List<String> getChildrenNames() {
+        List<String> names = new ArrayList<>(children.size());
+        children.forEach((name, child) -> names.add(name));
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Tree with the node at the segments set to the data, creating missing ancestors without data.
+     */
+    static ZKSnapshotNode put(ZKSnapshotNode node, String name, String[] segments, int index, byte[] data, Stat stat) {
+        if (index == segments.length) {
+            return new ZKSnapshotNode(name, data, stat, null == node ? ZKPersistentMap.empty() : node.children);
+        }
+        if (null == node) {
+            node = new ZKSnapshotNode(name, null, null, ZKPersistentMap.empty());
+        }
+        String childName = segments[index];
+        ZKSnapshotNode child = put(node.children.get(childName), childName, segments, index + 1, data, stat);
+        return new ZKSnapshotNode(node.name, node.data, node.stat, node.children.plus(childName, child));
+    }
+
+    /**
+     * Tree without the node at the segments and its subtree, null if the node itself is removed.
+     */
+    static ZKSnapshotNode remove(ZKSnapshotNode node, String[] segments, int index) {
+        if (null == node || index == segments.length) {
+            return null;
+        }
+        String childName = segments[index];
+        ZKSnapshotNode child = node.children.get(childName);
+        if (null == child) {
+            return node;
+        }
+        ZKSnapshotNode removed = remove(child, segments, index + 1);
+        return new ZKSnapshotNode(node.name, node.data, node.stat,
+                null == removed ? node.children.minus(childName) : node.children.plus(childName, removed));
+    }
+}
@@ -0,0 +1,283 @@
+package com.bytegen.common.zookeeper.snapshot;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.ZKExecutors;
+import com.bytegen.common.zookeeper.transfer.ZKTreeDiff;
+import com.bytegen.common.zookeeper.transfer.ZKTreeSync;
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Snapshot view of a subtree over the tree cache of the client. Cache events are folded into a working
+ * tree, and the events of one coalesce interval are published together as one immutable {@link ZKSnapshot}.
+ * Coalescing is time based and best effort: the cache fetches the nodes of a multi-node update one by one and
+ * can't tell when the last of them arrived, so an update whose events straddle the end of an interval is
+ * published over two snapshots. Reads take no locks: {@link #getSnapshot()} is one volatile read, and the
+ * last snapshots are kept in a bounded history ring to inspect or roll back to.
+ */
+public final class ZKSubtreeView implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZKSubtreeView.class);
+
+    public static final int DEFAULT_HISTORY_SIZE = 16;
+    public static final long DEFAULT_COALESCE_MILLIS = 20;
+
+    private final ZKClient client;
+    private final String rootPath;
+    private final long coalesceNanos;
+
+    private final TreeCacheListener cacheListener = this::cacheEvent;
+    private final AtomicReference<State> working = new AtomicReference<>(new State(null, 0));
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService publishExecutor;
+    private final List<ZKSnapshotListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicReferenceArray<ZKSnapshot> history;
+    private final CompletableFuture<ZKSnapshot> initialized = new CompletableFuture<>();
+    private volatile ZKSnapshot current;
+    /**
+     * Only used on the publish thread
+     */
+    private long version;
+
+    private volatile boolean ready;
+    private volatile boolean closed;
+
+    public ZKSubtreeView(ZKClient client, String path, int historySize, long coalesceInterval, TimeUnit unit) throws Exception {
+        Validate.notNull(client, "Client can't be null.");
+        Validate.isTrue(historySize > 0, "History size must be positive.");
+        Validate.isTrue(coalesceInterval >= 0, "Coalesce interval can't be negative.");
+        this.client = client;
+        this.rootPath = client.getRealPath(path);
+        this.coalesceNanos = unit.toNanos(coalesceInterval);
+        this.history = new AtomicReferenceArray<>(historySize);
+        this.publishExecutor = Executors.newSingleThreadScheduledExecutor(
+                ZKExecutors.newThreadFactory("zookeeper-subtree-view-thread-%d", true));
+
+        // INITIALIZED may fire before the listener is added and is not sent again, so an initialized cache
+        // starts from its current content
+        TreeCache cache = client.addTreeCacheListener(rootPath, cacheListener);
+        if (client.isTreeCacheInitialized(rootPath)) {
+            // the cache applies a change before firing its event, so a seed taken after the last event covers it
+            State seen = working.get();
+            State seeded = seed(cache);
+            while (!working.compareAndSet(seen, seeded)) {
+                seen = working.get();
+                seeded = seed(cache);
+            }
+            ready = true;
+            publishExecutor.execute(this::publish);
+        }
+    }
+
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * Latest snapshot, null until the cache is initialized.
+     */
+    public ZKSnapshot getSnapshot() {
+        return current;
+    }
+
+    /**
+     * Wait for the first snapshot.
+     */
+    public ZKSnapshot awaitSnapshot(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        try {
+            return initialized.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Snapshots kept in the history ring, the latest first.
+     */
+    public List<ZKSnapshot> getHistory() {
+        ZKSnapshot latest = current;
+        List<ZKSnapshot> snapshots = new ArrayList<>(history.length());
+        if (null == latest) {
+            return snapshots;
+        }
+        for (long v = latest.getVersion(); v > 0 && v > latest.getVersion() - history.length(); v--) {
+            ZKSnapshot snapshot = history.get(slot(v));
+            if (null == snapshot || snapshot.getVersion() != v) {
+                // overwritten by a newer publish meanwhile
+                break;
+            }
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    public void addListener(ZKSnapshotListener listener) {
+        Validate.notNull(listener, "Snapshot listener can't be null.");
+        listeners.add(listener);
+    }
+
+    public void removeListener(ZKSnapshotListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Write the subtree back to the state of an earlier snapshot, e.g. one of {@link #getHistory()}.
+     * Changes are computed against the latest snapshot, so writes of the last coalesce interval may be missed.
+     *
+     * @return number of applied changes
+     */
+    public int rollback(ZKSnapshot snapshot) throws Exception {
+        Validate.notNull(snapshot, "Snapshot can't be null.");
+        ZKSnapshot latest = current;
+        Validate.validState(null != latest, "Subtree view is not initialized.");
+        ZKTreeDiff diff = ZKTreeDiff.of(ZKSnapshot.diff(latest, snapshot));
+        if (diff.isEmpty()) {
+            return 0;
+        }
+        return new ZKTreeSync(client, rootPath, client, rootPath).apply(diff);
+    }
+
+    private void cacheEvent(CuratorFramework framework, TreeCacheEvent event) {
+        if (closed) {
+            return;
+        }
+        ChildData childData = event.getData();
+        switch (event.getType()) {
+            case NODE_ADDED:
+            case NODE_UPDATED:
+                String[] segments = ZKSnapshot.segments(rootPath, childData.getPath());
+                working.updateAndGet(state -> state.put(segments, childData.getData(), childData.getStat()));
+                schedulePublish();
+                break;
+            case NODE_REMOVED:
+                String[] removed = ZKSnapshot.segments(rootPath, childData.getPath());
+                working.updateAndGet(state -> state.remove(removed));
+                schedulePublish();
+                break;
+            case INITIALIZED:
+                ready = true;
+                publishExecutor.execute(this::publish);
+                break;
+            default:
+                // connection events change no node
+        }
+    }
+
+    private void schedulePublish() {
+        if (ready && publishScheduled.compareAndSet(false, true)) {
+            publishExecutor.schedule(this::publish, coalesceNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void publish() {
+        publishScheduled.set(false);
+        State state = working.get();
+        ZKSnapshot previous = current;
+        if (null != previous && previous.getRoot() == state.root) {
+            return;
+        }
+        version++;
+        ZKSnapshot snapshot = new ZKSnapshot(rootPath, state.root, state.zxid, version, System.currentTimeMillis());
+        history.set(slot(version), snapshot);
+        current = snapshot;
+        for (ZKSnapshotListener listener : listeners) {
+            try {
+                listener.snapshotPublished(previous, snapshot);
+            } catch (Exception e) {
+                logger.error("Snapshot listener of " + rootPath + " failed.", e);
+            }
+        }
+        // after the listeners, so one added once awaitSnapshot returns only sees later snapshots
+        initialized.complete(snapshot);
+    }
+
+    private int slot(long version) {
+        return (int) ((version - 1) % history.length());
+    }
+
+    private State seed(TreeCache cache) {
+        State state = new State(null, 0);
+        ChildData rootData = cache.getCurrentData(rootPath);
+        if (null != rootData) {
+            state = seed(cache, state, rootData);
+        }
+        return state;
+    }
+
+    private State seed(TreeCache cache, State state, ChildData childData) {
+        state = state.put(ZKSnapshot.segments(rootPath, childData.getPath()), childData.getData(), childData.getStat());
+        Map<String, ChildData> children = cache.getCurrentChildren(childData.getPath());
+        if (null != children) {
+            for (ChildData child : children.values()) {
+                state = seed(cache, state, child);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Stop following the cache; the cache itself stays registered in the client.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // a closed client has closed the cache already
+            if (client.getTreeCacheMap().containsKey(rootPath)) {
+                client.removeTreeCacheListener(rootPath, cacheListener);
+            }
+        } catch (Exception e) {
+            logger.warn("Remove tree cache listener of " + rootPath + " failed.", e);
+        }
+        publishExecutor.shutdownNow();
+    }
+
+    /**
+     * Working tree with the highest zxid seen
+     */
+    private static final class State {
+        private final ZKSnapshotNode root;
+        private final long zxid;
+
+        private State(ZKSnapshotNode root, long zxid) {
+            this.root = root;
+            this.zxid = zxid;
+        }
+
+        private State put(String[] segments, byte[] data, Stat stat) {
+            long nodeZxid = null == stat ? 0 : Math.max(stat.getMzxid(), Math.max(stat.getCzxid(), stat.getPzxid()));
+            return new State(ZKSnapshotNode.put(root, null, segments, 0, data, stat), Math.max(zxid, nodeZxid));
+        }
+
+        private State remove(String[] segments) {
+            return new State(ZKSnapshotNode.remove(root, segments, 0), zxid);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.bytegen.common.zookeeper.transfer;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: One change which makes the target node equal to the source node.
+ * Path is relative to the compared roots, "/" for the roots themselves.
+ */
+public final class ZKNodeChange {
+
+    public enum Type {
+        /**
+         * Node missing in target
+         */
+        CREATE,
+        /**
+         * Node data differs
+         */
+        UPDATE,
+        /**
+         * Node, with its subtree, missing in source
+         */
+        DELETE,
+    }
+
+    private final Type type;
+    private final String path;
+    private final byte[] data;
+
+    public ZKNodeChange(Type type, String path, byte[] data) {
+        this.type = type;
+        this.path = path;
+        this.data = data;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Data of source node, null for DELETE.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    int depth() {
+        if ("/".equals(path)) {
+            return 0;
+        }
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + path;
+    }
+}
@@ -0,0 +1,37 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: One exported node: path relative to the exported root ("/" for the root itself), Stat and data.
+ */
+public final class ZKNodeRecord {
+
+    private final String path;
+    private final Stat stat;
+    private final byte[] data;
+
+    public ZKNodeRecord(String path, Stat stat, byte[] data) {
+        this.path = path;
+        this.stat = stat;
+        this.data = data;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Stat getStat() {
+        return stat;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isEphemeral() {
+        return stat.getEphemeralOwner() != 0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import org.apache.zookeeper.data.Stat;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Streaming reader of node records written by {@link ZKRecordWriter}.
+ */
+public final class ZKRecordReader implements Closeable {
+
+    private final DataInputStream input;
+    private boolean finished;
+
+    public ZKRecordReader(InputStream input) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(input));
+        if (this.input.readInt() != ZKRecordWriter.MAGIC) {
+            throw new IOException("Not a zookeeper node record stream.");
+        }
+        int version = this.input.readInt();
+        if (version != ZKRecordWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported node record format version: " + version);
+        }
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return null at the end of records
+     */
+    public ZKNodeRecord read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (input.readByte() == 0) {
+            finished = true;
+            return null;
+        }
+        String path = input.readUTF();
+        Stat stat = readStat();
+        int length = input.readInt();
+        byte[] data = null;
+        if (length >= 0) {
+            data = new byte[length];
+            input.readFully(data);
+        }
+        return new ZKNodeRecord(path, stat, data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private Stat readStat() throws IOException {
+        Stat stat = new Stat();
+        stat.setCzxid(input.readLong());
+        stat.setMzxid(input.readLong());
+        stat.setCtime(input.readLong());
+        stat.setMtime(input.readLong());
+        stat.setVersion(input.readInt());
+        stat.setCversion(input.readInt());
+        stat.setAversion(input.readInt());
+        stat.setEphemeralOwner(input.readLong());
+        stat.setDataLength(input.readInt());
+        stat.setNumChildren(input.readInt());
+        stat.setPzxid(input.readLong());
+        return stat;
+    }
+}
@@ -0,0 +1,80 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import org.apache.zookeeper.data.Stat;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Streaming writer of node records. Thread safe, records of parallel traversal are written as they come.
+ * Format: header, then per record [1, path, Stat, data length (-1 for null), data], then 0 as the end mark.
+ */
+public final class ZKRecordWriter implements Closeable {
+
+    static final int MAGIC = 0x5A4B5452; // "ZKTR"
+    static final int FORMAT_VERSION = 1;
+
+    private final DataOutputStream output;
+    private long count;
+    private boolean finished;
+
+    public ZKRecordWriter(OutputStream output) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(output));
+        this.output.writeInt(MAGIC);
+        this.output.writeInt(FORMAT_VERSION);
+    }
+
+    public synchronized void write(ZKNodeRecord record) throws IOException {
+        output.writeByte(1);
+        output.writeUTF(record.getPath());
+        writeStat(record.getStat());
+        byte[] data = record.getData();
+        if (null == data) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(data.length);
+            output.write(data);
+        }
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Write the end mark and flush, leaving the underlying stream open.
+     */
+    public synchronized void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            output.writeByte(0);
+            output.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        finish();
+        output.close();
+    }
+
+    private void writeStat(Stat stat) throws IOException {
+        output.writeLong(stat.getCzxid());
+        output.writeLong(stat.getMzxid());
+        output.writeLong(stat.getCtime());
+        output.writeLong(stat.getMtime());
+        output.writeInt(stat.getVersion());
+        output.writeInt(stat.getCversion());
+        output.writeInt(stat.getAversion());
+        output.writeLong(stat.getEphemeralOwner());
+        output.writeInt(stat.getDataLength());
+        output.writeInt(stat.getNumChildren());
+        output.writeLong(stat.getPzxid());
+    }
+}
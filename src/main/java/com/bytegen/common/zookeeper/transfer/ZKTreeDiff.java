@@ -0,0 +1,66 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Change set between two subtrees, deletes first then creates and updates with parents before children.
+ */
+public final class ZKTreeDiff {
+
+    static final Comparator<ZKNodeChange> ORDER =
+            Comparator.comparing((ZKNodeChange change) -> change.getType() != ZKNodeChange.Type.DELETE)
+                    .thenComparingInt(ZKNodeChange::depth)
+                    .thenComparing(ZKNodeChange::getPath);
+
+    private final List<ZKNodeChange> changes;
+    private final long comparedNodes;
+    private final long dataReads;
+
+    ZKTreeDiff(List<ZKNodeChange> changes, long comparedNodes, long dataReads) {
+        this.changes = Collections.unmodifiableList(changes);
+        this.comparedNodes = comparedNodes;
+        this.dataReads = dataReads;
+    }
+
+    /**
+     * Change set of given changes, e.g. computed from snapshots, in apply order.
+     */
+    public static ZKTreeDiff of(Collection<ZKNodeChange> changes) {
+        List<ZKNodeChange> sorted = new ArrayList<>(changes);
+        sorted.sort(ORDER);
+        return new ZKTreeDiff(sorted, 0, 0);
+    }
+
+    public List<ZKNodeChange> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Source nodes compared.
+     */
+    public long getComparedNodes() {
+        return comparedNodes;
+    }
+
+    /**
+     * Node data actually fetched, the rest were decided by Stat and cached digests.
+     */
+    public long getDataReads() {
+        return dataReads;
+    }
+
+    @Override
+    public String toString() {
+        return "ZKTreeDiff{changes=" + changes.size() + ", comparedNodes=" + comparedNodes + ", dataReads=" + dataReads + "}";
+    }
+}
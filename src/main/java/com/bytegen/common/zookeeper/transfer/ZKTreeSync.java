@@ -0,0 +1,353 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.ZKConstant;
+import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Diff and sync a target subtree to a source subtree, e.g. between environments of {@link com.bytegen.common.zookeeper.ZKFacade}.
+ * <p>
+ * Every node is compared by Stat first: different data length means changed without reading data.
+ * Data digests are kept with the mzxid they were computed at, and children with the pzxid, so a repeated
+ * diff only reads the data and children of nodes modified since, one Stat round trip for the others.
+ * Subtrees missing on one side are not read on that side at all.
+ * Ephemeral nodes are skipped on both sides, like {@link ZKTreeTransfer} does: they belong to the sessions
+ * which created them, so they are neither copied to the target nor deleted from it.
+ */
+public final class ZKTreeSync {
+
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+    private static final String ZOOKEEPER_SYSTEM_PATH = "/zookeeper";
+
+    private final ZKClient source;
+    private final String sourceRoot;
+    private final ZKClient target;
+    private final String targetRoot;
+
+    /**
+     * Digests of last diff, by path relative to the roots
+     */
+    private final ConcurrentMap<String, NodeDigest> digests = new ConcurrentHashMap<>();
+
+    public ZKTreeSync(ZKClient source, String sourcePath, ZKClient target, String targetPath) {
+        Validate.notNull(source, "Source client can't be null.");
+        Validate.notNull(target, "Target client can't be null.");
+        this.source = source;
+        this.sourceRoot = source.getRealPath(sourcePath);
+        this.target = target;
+        this.targetRoot = target.getRealPath(targetPath);
+    }
+
+    public ZKTreeDiff diff() throws Exception {
+        return diff(ZKTreeTransfer.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Compute the changes which make the target subtree equal to the source subtree.
+     */
+    public ZKTreeDiff diff(final int parallelism) throws Exception {
+        Queue<ZKNodeChange> changes = new ConcurrentLinkedQueue<>();
+        AtomicLong compared = new AtomicLong();
+        AtomicLong dataReads = new AtomicLong();
+        ZKTreeWalker.walk(new Visit(ZKConstant.PATH_SEPERATOR, false), parallelism,
+                visit -> visit(visit, changes, compared, dataReads));
+
+        List<ZKNodeChange> sorted = new ArrayList<>(changes);
+        sorted.sort(ZKTreeDiff.ORDER);
+        return new ZKTreeDiff(sorted, compared.get(), dataReads.get());
+    }
+
+    public int apply(final ZKTreeDiff diff) throws Exception {
+        return apply(diff, ZKTreeTransfer.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Apply the changes to the target in multi-op batches.
+     *
+     * @return number of applied changes
+     */
+    public int apply(final ZKTreeDiff diff, final int batchSize) throws Exception {
+        Validate.notNull(diff, "Diff can't be null.");
+        Validate.isTrue(batchSize > 0, "Batch size must be positive.");
+
+        try {
+            ZKTreeTransfer.ensureParent(target, targetRoot);
+            List<ZKNodeChange> batch = new ArrayList<>();
+            int batchBytes = 0;
+            for (ZKNodeChange change : diff.getChanges()) {
+                int bytes = null == change.getData() ? 0 : change.getData().length;
+                if (!batch.isEmpty() && (batch.size() >= batchSize || batchBytes + bytes > ZKTreeTransfer.MAX_BATCH_BYTES
+                        || (batch.get(0).getType() == ZKNodeChange.Type.DELETE) != (change.getType() == ZKNodeChange.Type.DELETE))) {
+                    applyBatch(batch);
+                    batch.clear();
+                    batchBytes = 0;
+                }
+                batch.add(change);
+                batchBytes += bytes;
+            }
+            if (!batch.isEmpty()) {
+                applyBatch(batch);
+            }
+        } finally {
+            target.markWritten(targetRoot);
+        }
+
+        ZKActionMonitor.getInstance().triggerAction(ZKActionType.SYNC_TREE, target, targetRoot, diff.getChanges().size());
+        return diff.getChanges().size();
+    }
+
+    /**
+     * Diff and apply.
+     */
+    public ZKTreeDiff sync() throws Exception {
+        ZKTreeDiff diff = diff();
+        if (!diff.isEmpty()) {
+            apply(diff);
+        }
+        return diff;
+    }
+
+    /**
+     * Forget the digests of previous diffs.
+     */
+    public void clearDigests() {
+        digests.clear();
+    }
+
+    private List<Visit> visit(Visit visit, Queue<ZKNodeChange> changes, AtomicLong compared, AtomicLong dataReads) throws Exception {
+        String path = visit.path;
+        String sourcePath = ZKTreeTransfer.absolutePath(sourceRoot, path);
+        String targetPath = ZKTreeTransfer.absolutePath(targetRoot, path);
+
+        Stat sourceStat = stat(source, sourcePath);
+        if (null == sourceStat) {
+            if (ZKConstant.PATH_SEPERATOR.equals(path)) {
+                throw new KeeperException.NoNodeException(sourcePath);
+            }
+            // deleted while walking
+            return null;
+        }
+        if (isEphemeral(sourceStat)) {
+            return null;
+        }
+        compared.incrementAndGet();
+
+        NodeDigest cached = visit.targetMissing ? null : digests.get(path);
+        Stat targetStat = visit.targetMissing ? null : stat(target, targetPath);
+        if (null != targetStat && isEphemeral(targetStat)) {
+            // a persistent node can't replace a live ephemeral one
+            digests.remove(path);
+            return null;
+        }
+        List<String> sourceChildren = null != cached && cached.sourcePzxid == sourceStat.getPzxid()
+                ? cached.sourceChildren : children(source, sourcePath, sourceStat);
+
+        if (null == targetStat) {
+            dataReads.incrementAndGet();
+            changes.add(new ZKNodeChange(ZKNodeChange.Type.CREATE, path, data(source, sourcePath, sourceStat)));
+            digests.remove(path);
+            return visits(path, sourceChildren, null);
+        }
+
+        byte[] sourceData = null;
+        HashCode sourceDigest = null != cached && cached.sourceMzxid == sourceStat.getMzxid() ? cached.sourceDigest : null;
+        HashCode targetDigest = null != cached && cached.targetMzxid == targetStat.getMzxid() ? cached.targetDigest : null;
+        boolean changed;
+        if (sourceStat.getDataLength() != targetStat.getDataLength()) {
+            changed = true;
+        } else {
+            if (null == sourceDigest) {
+                dataReads.incrementAndGet();
+                sourceData = data(source, sourcePath, sourceStat);
+                sourceDigest = digest(sourceData);
+            }
+            if (null == targetDigest) {
+                dataReads.incrementAndGet();
+                targetDigest = digest(data(target, targetPath, targetStat));
+            }
+            changed = !sourceDigest.equals(targetDigest);
+        }
+        if (changed) {
+            if (null == sourceData) {
+                dataReads.incrementAndGet();
+                sourceData = data(source, sourcePath, sourceStat);
+            }
+            changes.add(new ZKNodeChange(ZKNodeChange.Type.UPDATE, path, sourceData));
+        }
+
+        List<String> targetChildren = null != cached && cached.targetPzxid == targetStat.getPzxid()
+                ? cached.targetChildren : children(target, targetPath, targetStat);
+        Set<String> sourceNames = new HashSet<>(sourceChildren);
+        for (String name : targetChildren) {
+            if (!sourceNames.contains(name)) {
+                String childPath = childPath(path, name);
+                Stat childStat = stat(target, ZKTreeTransfer.absolutePath(targetRoot, childPath));
+                if (null != childStat && !isEphemeral(childStat)) {
+                    changes.add(new ZKNodeChange(ZKNodeChange.Type.DELETE, childPath, null));
+                }
+            }
+        }
+
+        digests.put(path, new NodeDigest(sourceStat, targetStat, changed ? null : sourceDigest,
+                changed ? null : targetDigest, sourceChildren, targetChildren));
+        return visits(path, sourceChildren, new HashSet<>(targetChildren));
+    }
+
+    private List<Visit> visits(String path, List<String> sourceChildren, Set<String> targetNames) {
+        List<Visit> visits = new ArrayList<>(sourceChildren.size());
+        for (String name : sourceChildren) {
+            visits.add(new Visit(childPath(path, name), null == targetNames || !targetNames.contains(name)));
+        }
+        return visits;
+    }
+
+    private void applyBatch(List<ZKNodeChange> batch) throws Exception {
+        CuratorFramework framework = target.getFramework();
+        // permits already paid by the multi-op cover the one by one fallback
+        boolean permitted = false;
+        if (batch.size() > 1) {
+            List<CuratorOp> ops = new ArrayList<>(batch.size());
+            for (ZKNodeChange change : batch) {
+                String realPath = ZKTreeTransfer.absolutePath(targetRoot, change.getPath());
+                switch (change.getType()) {
+                    case CREATE:
+                        target.acquirePermit(ZKActionType.CREATE_PERSISTENT, realPath);
+                        ops.add(framework.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(realPath, change.getData()));
+                        break;
+                    case UPDATE:
+                        target.acquirePermit(ZKActionType.SET_DATA, realPath);
+                        ops.add(framework.transactionOp().setData().forPath(realPath, change.getData()));
+                        break;
+                    case DELETE:
+                        target.acquirePermit(ZKActionType.DELETE_PATH, realPath);
+                        ops.add(framework.transactionOp().delete().forPath(realPath));
+                        break;
+                }
+            }
+            permitted = true;
+            try {
+                framework.transaction().forOperations(ops);
+                return;
+            } catch (KeeperException.NodeExistsException | KeeperException.NoNodeException
+                    | KeeperException.NotEmptyException e) {
+                // target changed since diff or deleted node has children, fall back to one by one
+            }
+        }
+
+        for (ZKNodeChange change : batch) {
+            String realPath = ZKTreeTransfer.absolutePath(targetRoot, change.getPath());
+            if (change.getType() == ZKNodeChange.Type.DELETE) {
+                if (!permitted) {
+                    target.acquirePermit(ZKActionType.DELETE_PATH, realPath);
+                }
+                try {
+                    framework.delete().deletingChildrenIfNeeded().forPath(realPath);
+                } catch (KeeperException.NoNodeException e) {
+                    // already deleted
+                }
+            } else {
+                if (!permitted) {
+                    target.acquirePermit(ZKActionType.UPDATE_PERSISTENT, realPath);
+                }
+                framework.create().orSetData().creatingParentsIfNeeded()
+                        .withMode(CreateMode.PERSISTENT).forPath(realPath, change.getData());
+            }
+        }
+    }
+
+    private String childPath(String path, String name) {
+        return ZKConstant.PATH_SEPERATOR.equals(path) ? ZKConstant.PATH_SEPERATOR + name : path + ZKConstant.PATH_SEPERATOR + name;
+    }
+
+    private static boolean isEphemeral(Stat stat) {
+        return stat.getEphemeralOwner() != 0;
+    }
+
+    private static Stat stat(ZKClient client, String realPath) throws Exception {
+        client.acquirePermit(ZKActionType.CHECK_EXISTS, realPath);
+        return client.getFramework().checkExists().forPath(realPath);
+    }
+
+    private static byte[] data(ZKClient client, String realPath, Stat stat) throws Exception {
+        client.acquirePermit(ZKActionType.GET_DATA, realPath);
+        byte[] data = client.getFramework().getData().storingStatIn(stat).forPath(realPath);
+        return null == data ? new byte[0] : data;
+    }
+
+    private static List<String> children(ZKClient client, String realPath, Stat stat) throws Exception {
+        if (stat.getNumChildren() == 0) {
+            return Collections.emptyList();
+        }
+        client.acquirePermit(ZKActionType.GET_CHILD_NAMES, realPath);
+        List<String> names;
+        try {
+            names = client.getFramework().getChildren().forPath(realPath);
+        } catch (KeeperException.NoNodeException e) {
+            return Collections.emptyList();
+        }
+        if (ZKTreeTransfer.isZookeeperRoot(client, realPath)) {
+            names.remove(ZOOKEEPER_SYSTEM_PATH.substring(1));
+        }
+        return names;
+    }
+
+    private static HashCode digest(byte[] data) {
+        return DIGEST.hashBytes(data);
+    }
+
+    private static final class Visit {
+        private final String path;
+        private final boolean targetMissing;
+
+        private Visit(String path, boolean targetMissing) {
+            this.path = path;
+            this.targetMissing = targetMissing;
+        }
+    }
+
+    private static final class NodeDigest {
+        private final long sourceMzxid;
+        private final long targetMzxid;
+        private final long sourcePzxid;
+        private final long targetPzxid;
+        private final HashCode sourceDigest;
+        private final HashCode targetDigest;
+        private final List<String> sourceChildren;
+        private final List<String> targetChildren;
+
+        private NodeDigest(Stat sourceStat, Stat targetStat, HashCode sourceDigest, HashCode targetDigest,
+                           List<String> sourceChildren, List<String> targetChildren) {
+            this.sourceMzxid = sourceStat.getMzxid();
+            this.targetMzxid = targetStat.getMzxid();
+            this.sourcePzxid = sourceStat.getPzxid();
+            this.targetPzxid = targetStat.getPzxid();
+            this.sourceDigest = sourceDigest;
+            this.targetDigest = targetDigest;
+            this.sourceChildren = sourceChildren;
+            this.targetChildren = targetChildren;
+        }
+    }
+}
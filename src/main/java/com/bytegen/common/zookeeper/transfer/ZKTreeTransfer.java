@@ -0,0 +1,210 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.ZKConstant;
+import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+import org.apache.commons.lang3.Validate;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Export a subtree to a record stream and import it back, possibly under another path or ensemble.
+ */
+public final class ZKTreeTransfer {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Keep each multi-op well below the default jute.maxbuffer (1M).
+     */
+    static final int MAX_BATCH_BYTES = 512 * 1024;
+
+    private static final String ZOOKEEPER_SYSTEM_PATH = "/zookeeper";
+    private static final byte[] EMPTY_DATA = new byte[0];
+
+    /**
+     * Write the subtree of given path to the output, parents before children.
+     *
+     * @return number of exported nodes
+     */
+    public static long exportTree(final ZKClient client, final String path, final OutputStream output,
+                                  final int parallelism) throws Exception {
+        Validate.notNull(output, "Output can't be null.");
+
+        String rootPath = client.getRealPath(path);
+        CuratorFramework framework = client.getFramework();
+        ZKRecordWriter writer = new ZKRecordWriter(output);
+        ZKTreeWalker.walk(rootPath, parallelism, realPath -> {
+            Stat stat = new Stat();
+            byte[] data;
+            List<String> names;
+            try {
+                client.acquirePermit(ZKActionType.GET_DATA, realPath);
+                data = framework.getData().storingStatIn(stat).forPath(realPath);
+                names = Collections.emptyList();
+                if (stat.getNumChildren() > 0) {
+                    client.acquirePermit(ZKActionType.GET_CHILD_NAMES, realPath);
+                    names = framework.getChildren().forPath(realPath);
+                }
+            } catch (KeeperException.NoNodeException e) {
+                if (realPath.equals(rootPath)) {
+                    throw e;
+                }
+                // deleted while walking
+                return null;
+            }
+            writer.write(new ZKNodeRecord(relativePath(rootPath, realPath), stat, data));
+            return childPaths(client, realPath, names);
+        });
+        writer.finish();
+
+        ZKActionMonitor.getInstance().triggerAction(ZKActionType.EXPORT_TREE, client, rootPath, writer.getCount());
+        return writer.getCount();
+    }
+
+    /**
+     * Create or update the nodes read from the input under given path, in multi-op batches.
+     * Ephemeral nodes are skipped since they belong to the sessions which created them.
+     *
+     * @return number of imported nodes
+     */
+    public static long importTree(final ZKClient client, final String path, final InputStream input,
+                                  final int batchSize) throws Exception {
+        Validate.notNull(input, "Input can't be null.");
+        Validate.isTrue(batchSize > 0, "Batch size must be positive.");
+
+        String rootPath = client.getRealPath(path);
+        ZKRecordReader reader = new ZKRecordReader(input);
+        ensureParent(client, rootPath);
+
+        List<String> batchPaths = new ArrayList<>();
+        List<byte[]> batchData = new ArrayList<>();
+        int batchBytes = 0;
+        long count = 0;
+        try {
+            for (ZKNodeRecord record = reader.read(); null != record; record = reader.read()) {
+                if (record.isEphemeral()) {
+                    continue;
+                }
+                byte[] data = null == record.getData() ? EMPTY_DATA : record.getData();
+                if (!batchPaths.isEmpty() && (batchPaths.size() >= batchSize || batchBytes + data.length > MAX_BATCH_BYTES)) {
+                    createOrSetData(client, batchPaths, batchData);
+                    batchPaths.clear();
+                    batchData.clear();
+                    batchBytes = 0;
+                }
+                batchPaths.add(absolutePath(rootPath, record.getPath()));
+                batchData.add(data);
+                batchBytes += data.length;
+                count++;
+            }
+            if (!batchPaths.isEmpty()) {
+                createOrSetData(client, batchPaths, batchData);
+            }
+        } finally {
+            client.markWritten(rootPath);
+        }
+
+        ZKActionMonitor.getInstance().triggerAction(ZKActionType.IMPORT_TREE, client, rootPath, count);
+        return count;
+    }
+
+    /**
+     * Create the nodes in one multi-op, or one by one with set data fallback if some already exist.
+     * Parents have to come before their children.
+     */
+    static void createOrSetData(ZKClient client, List<String> realPaths, List<byte[]> data) throws Exception {
+        CuratorFramework framework = client.getFramework();
+        // permits already paid by the multi-op cover the one by one fallback
+        boolean permitted = false;
+        if (realPaths.size() > 1) {
+            List<CuratorOp> ops = new ArrayList<>(realPaths.size());
+            for (int i = 0; i < realPaths.size(); i++) {
+                client.acquirePermit(ZKActionType.CREATE_PERSISTENT, realPaths.get(i));
+                ops.add(framework.transactionOp().create().withMode(CreateMode.PERSISTENT)
+                        .forPath(realPaths.get(i), data.get(i)));
+            }
+            permitted = true;
+            try {
+                framework.transaction().forOperations(ops);
+                return;
+            } catch (KeeperException.NodeExistsException | KeeperException.NoNodeException e) {
+                // fall back to one by one
+            }
+        }
+        for (int i = 0; i < realPaths.size(); i++) {
+            if (!permitted) {
+                client.acquirePermit(ZKActionType.UPDATE_PERSISTENT, realPaths.get(i));
+            }
+            framework.create().orSetData().creatingParentsIfNeeded()
+                    .withMode(CreateMode.PERSISTENT).forPath(realPaths.get(i), data.get(i));
+        }
+    }
+
+    static void ensureParent(ZKClient client, String realPath) throws Exception {
+        String parent = ZKPaths.getPathAndNode(realPath).getPath();
+        if (!ZKConstant.PATH_SEPERATOR.equals(parent) && null == client.getFramework().checkExists().forPath(parent)) {
+            try {
+                client.getFramework().create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(parent, EMPTY_DATA);
+            } catch (KeeperException.NodeExistsException e) {
+                // created concurrently
+            }
+        }
+    }
+
+    static List<String> childPaths(ZKClient client, String realPath, List<String> names) {
+        if (null == names || names.isEmpty()) {
+            return Collections.emptyList();
+        }
+        boolean zookeeperRoot = isZookeeperRoot(client, realPath);
+        List<String> paths = new ArrayList<>(names.size());
+        for (String name : names) {
+            String childPath = ZKPaths.makePath(realPath, name);
+            if (!zookeeperRoot || !ZOOKEEPER_SYSTEM_PATH.equals(childPath)) {
+                paths.add(childPath);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Whether the path is the root of the ensemble, which holds the system node; the root of a namespace is not.
+     */
+    static boolean isZookeeperRoot(ZKClient client, String realPath) {
+        return null == client.getNamespace() && ZKConstant.PATH_SEPERATOR.equals(realPath);
+    }
+
+    /**
+     * Path relative to the root, "/" for the root itself.
+     */
+    static String relativePath(String rootPath, String realPath) {
+        if (realPath.equals(rootPath)) {
+            return ZKConstant.PATH_SEPERATOR;
+        }
+        return ZKConstant.PATH_SEPERATOR.equals(rootPath) ? realPath : realPath.substring(rootPath.length());
+    }
+
+    static String absolutePath(String rootPath, String relativePath) {
+        if (ZKConstant.PATH_SEPERATOR.equals(relativePath)) {
+            return rootPath;
+        }
+        return ZKConstant.PATH_SEPERATOR.equals(rootPath) ? relativePath : rootPath + relativePath;
+    }
+
+    private ZKTreeTransfer() {
+    }
+}
@@ -0,0 +1,100 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Parallel subtree traversal with bounded concurrency. A node is visited before its children are
+ * scheduled, and the work-stealing pool walks depth first, so pending work is bounded by depth * fan-out
+ * instead of the tree size.
+ */
+final class ZKTreeWalker {
+
+    interface Visitor<N> {
+        /**
+         * Visit the node.
+         *
+         * @return the children to walk into, null or empty for none
+         */
+        List<N> visit(N node) throws Exception;
+    }
+
+    static <N> void walk(N root, int parallelism, Visitor<N> visitor) throws Exception {
+        Validate.isTrue(parallelism > 0, "Parallelism must be positive.");
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("zookeeper-tree-walker-thread-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        try {
+            pool.invoke(new VisitTask<>(root, visitor, new AtomicBoolean()));
+        } catch (WalkException e) {
+            Throwable cause = e;
+            while (cause instanceof WalkException && null != cause.getCause()) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private ZKTreeWalker() {
+    }
+
+    private static final class VisitTask<N> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final N node;
+        private final Visitor<N> visitor;
+        private final AtomicBoolean failed;
+
+        private VisitTask(N node, Visitor<N> visitor, AtomicBoolean failed) {
+            this.node = node;
+            this.visitor = visitor;
+            this.failed = failed;
+        }
+
+        @Override
+        protected void compute() {
+            if (failed.get()) {
+                return;
+            }
+            List<N> children;
+            try {
+                children = visitor.visit(node);
+            } catch (Exception e) {
+                failed.set(true);
+                throw new WalkException(e);
+            }
+            if (null == children || children.isEmpty()) {
+                return;
+            }
+            List<VisitTask<N>> tasks = new ArrayList<>(children.size());
+            for (N child : children) {
+                tasks.add(new VisitTask<>(child, visitor, failed));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    static final class WalkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public WalkException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.bytegen.common.zookeeper;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Virtual thread factory used by {@link ZKExecutors} on JDK 21+.
+ */
+final class ZKVirtualThreads {
+
+    private ZKVirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return true;
+    }
+
+    static ThreadFactory newThreadFactory(String namePrefix, Thread.UncaughtExceptionHandler handler) {
+        return Thread.ofVirtual()
+                .name(namePrefix, 0)
+                .uncaughtExceptionHandler(handler)
+                .factory();
+    }
+}
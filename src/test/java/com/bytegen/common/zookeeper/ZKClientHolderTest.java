@@ -0,0 +1,111 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKClientHolderTest {
+
+    private static ZKEmbeddedServer server;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new ZKEmbeddedServer();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void lastReleaseClosesConnection() throws Exception {
+        ZKConnection first = ZKClientHolder.tryCreateClient(server.getConnectString(), "");
+        ZKConnection second = ZKClientHolder.tryCreateClient(server.getConnectString(), "");
+        Assert.assertSame(first, second);
+
+        ZKClientHolder.tryCloseClient(first);
+        Assert.assertThat(first.getFramework().getState(), is(CuratorFrameworkState.STARTED));
+        ZKClientHolder.tryCloseClient(second);
+        Assert.assertThat(first.getFramework().getState(), is(CuratorFrameworkState.STOPPED));
+        Assert.assertTrue(first.getConnectedFuture().isDone());
+    }
+
+    @Test
+    public void acquireAfterCloseCreatesNewConnection() throws Exception {
+        ZKClient client = ZKFacade.getClient(server.getConnectString(), "");
+        client.close();
+        Assert.assertThat(client.getFramework().getState(), is(CuratorFrameworkState.STOPPED));
+
+        ZKClient reopened = ZKFacade.getClient(server.getConnectString(), "");
+        try {
+            Assert.assertNotSame(client.getFramework(), reopened.getFramework());
+            Assert.assertTrue(reopened.blockUntilConnected(10, TimeUnit.SECONDS));
+            reopened.createPersistent("/holder/reopened", "v", StringSerializer.getInstance());
+            Assert.assertThat(reopened.getData("/holder/reopened", StringSerializer.getInstance()), is("v"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void closingStaleConnectionKeepsNewOne() throws Exception {
+        ZKConnection stale = ZKClientHolder.tryCreateClient(server.getConnectString(), "");
+        ZKClientHolder.tryCloseClient(stale);
+        ZKConnection current = ZKClientHolder.tryCreateClient(server.getConnectString(), "");
+        try {
+            Assert.assertNotSame(stale, current);
+            // releasing an already closed connection again must not release the new one
+            ZKClientHolder.tryCloseClient(stale);
+            Assert.assertThat(current.getFramework().getState(), is(CuratorFrameworkState.STARTED));
+        } finally {
+            ZKClientHolder.tryCloseClient(current);
+        }
+        Assert.assertThat(current.getFramework().getState(), is(CuratorFrameworkState.STOPPED));
+    }
+
+    @Test
+    public void concurrentAcquireAndRelease() throws Exception {
+        ZKConnection anchor = ZKClientHolder.tryCreateClient(server.getConnectString(), "");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 50; j++) {
+                        ZKClientHolder.tryCloseClient(ZKClientHolder.tryCreateClient(server.getConnectString(), ""));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            // the anchor reference kept the shared connection open throughout
+            Assert.assertSame(anchor, ZKClientHolder.tryCreateClient(server.getConnectString(), ""));
+            Assert.assertThat(anchor.getFramework().getState(), is(CuratorFrameworkState.STARTED));
+            ZKClientHolder.tryCloseClient(anchor);
+        } finally {
+            executor.shutdownNow();
+            ZKClientHolder.tryCloseClient(anchor);
+        }
+        Assert.assertThat(anchor.getFramework().getState(), is(CuratorFrameworkState.STOPPED));
+    }
+}
@@ -1,28 +1,48 @@
 package com.bytegen.common.zookeeper;
 
 import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
 import org.apache.curator.framework.recipes.cache.*;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.core.Is.is;
 
 public class ZKClientTest {
 
-    private String zkHost = "10.125.253.8:2181,10.125.252.116:2181,10.125.252.65:2181";
+    private static ZKEmbeddedServer server;
     private String zkAuth = "";
 
     private ZKClient client;
 
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new ZKEmbeddedServer();
+        ZKClient seed = server.newClient();
+        try {
+            seed.createPersistent("com/bytegen/dev", "{}", StringSerializer.getInstance());
+        } finally {
+            seed.close();
+        }
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.close();
+    }
+
     @Before
     public void init() {
-        client = ZKFacade.getClient(zkHost, zkAuth);
+        client = ZKFacade.getClient(server.getConnectString(), zkAuth);
     }
 
     @After
@@ -194,4 +214,95 @@ public class ZKClientTest {
         Assert.assertThat(client.getNodeCache(path).getListenable().size(), is(0));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void updateCreatesThenSetsData() throws Exception {
+        String path = "/update/create";
+        StringSerializer serializer = StringSerializer.getInstance();
+        Assert.assertThat(client.update(path, serializer, v -> null == v ? "1" : v + "1"), is("1"));
+        Assert.assertThat(client.update(path, serializer, v -> null == v ? "1" : v + "1"), is("11"));
+        Assert.assertThat(client.getData(path, serializer), is("11"));
+    }
+
+    @Test
+    public void updateNodeWithoutData() throws Exception {
+        String path = "/update/empty";
+        client.getFramework().create().creatingParentsIfNeeded().forPath(path, null);
+        ZKUpdateStats stats = client.getUpdateStats();
+        long conflicts = stats.getConflicts();
+
+        Assert.assertThat(client.update(path, StringSerializer.getInstance(), v -> null == v ? "set" : v, 0), is("set"));
+        Assert.assertThat(client.getData(path, StringSerializer.getInstance()), is("set"));
+        Assert.assertThat(stats.getConflicts(), is(conflicts));
+    }
+
+    @Test
+    public void updateRetriesOnConflict() throws Exception {
+        String path = "/update/conflict";
+        StringSerializer serializer = StringSerializer.getInstance();
+        client.createPersistent(path, "0", serializer);
+        ZKUpdateStats stats = client.getUpdateStats();
+        long conflicts = stats.getConflicts();
+        AtomicInteger calls = new AtomicInteger();
+
+        String updated = client.update(path, serializer, v -> {
+            if (calls.getAndIncrement() == 0) {
+                // a concurrent writer changes the node between the read and the write
+                try {
+                    client.setData(path, "5", serializer);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return String.valueOf(Integer.parseInt(v) + 1);
+        });
+
+        Assert.assertThat(updated, is("6"));
+        Assert.assertThat(calls.get(), is(2));
+        Assert.assertThat(stats.getConflicts(), is(conflicts + 1));
+    }
+
+    @Test
+    public void updateGivesUpAfterMaxRetries() throws Exception {
+        String path = "/update/exhausted";
+        StringSerializer serializer = StringSerializer.getInstance();
+        client.createPersistent(path, "0", serializer);
+        ZKUpdateStats stats = client.getUpdateStats();
+        long exhausted = stats.getExhausted();
+        AtomicInteger calls = new AtomicInteger();
+
+        try {
+            client.update(path, serializer, v -> {
+                try {
+                    client.setData(path, "x" + calls.incrementAndGet(), serializer);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return "mine";
+            }, 2);
+            Assert.fail("Update should give up.");
+        } catch (KeeperException.BadVersionException e) {
+            // expected
+        }
+        Assert.assertThat(calls.get(), is(3));
+        Assert.assertThat(stats.getExhausted(), is(exhausted + 1));
+        Assert.assertThat(client.getData(path, serializer), is("x3"));
+    }
+
+    @Test
+    public void updateReadsFromCacheFirst() throws Exception {
+        String path = "/update/cached";
+        StringSerializer serializer = StringSerializer.getInstance();
+        client.createPersistent(path, "1", serializer);
+        NodeCache cache = client.getNodeCache(path);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (null == cache.getCurrentData() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ZKUpdateStats stats = client.getUpdateStats();
+        long cacheReads = stats.getCacheReads();
+
+        Assert.assertThat(client.update(path, serializer, v -> v + "2"), is("12"));
+        Assert.assertThat(stats.getCacheReads(), is(cacheReads + 1));
+    }
+
+}
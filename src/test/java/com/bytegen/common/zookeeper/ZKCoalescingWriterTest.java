@@ -0,0 +1,124 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKCoalescingWriterTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+        client.createPersistent("/coalesce/a", "a0", StringSerializer.getInstance());
+        client.createPersistent("/coalesce/b", "b0", StringSerializer.getInstance());
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void coalesceWritesOfSamePath() throws Exception {
+        try (ZKCoalescingWriter writer = client.newCoalescingWriter(1, TimeUnit.HOURS)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 1; i <= 5; i++) {
+                futures.add(writer.setData("/coalesce/a", "a" + i, StringSerializer.getInstance()));
+            }
+            futures.add(writer.setData("/coalesce/b", "b1", StringSerializer.getInstance()));
+            writer.flush();
+
+            for (CompletableFuture<Void> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            Assert.assertThat(writer.getSubmittedCount(), is(6L));
+            Assert.assertThat(writer.getWrittenCount(), is(2L));
+            Assert.assertThat(client.getData("/coalesce/a", StringSerializer.getInstance()), is("a5"));
+            Assert.assertThat(client.getData("/coalesce/b", StringSerializer.getInstance()), is("b1"));
+        }
+    }
+
+    @Test
+    public void keepCreateOfCoalescedWrite() throws Exception {
+        try (ZKCoalescingWriter writer = client.newCoalescingWriter(1, TimeUnit.HOURS)) {
+            CompletableFuture<Void> create = writer.createPersistentOrSetData("/coalesce/new", "n1", StringSerializer.getInstance());
+            CompletableFuture<Void> set = writer.setData("/coalesce/new", "n2", StringSerializer.getInstance());
+            writer.flush();
+
+            create.get(5, TimeUnit.SECONDS);
+            set.get(5, TimeUnit.SECONDS);
+            Assert.assertThat(client.getData("/coalesce/new", StringSerializer.getInstance()), is("n2"));
+        }
+    }
+
+    @Test
+    public void lastWriteWinsUnderConcurrentFlushes() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (ZKCoalescingWriter writer = client.newCoalescingWriter(1, TimeUnit.MILLISECONDS)) {
+            Future<?> flusher = executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    writer.flush();
+                }
+            });
+            CompletableFuture<Void> last = null;
+            for (int i = 1; i <= 200; i++) {
+                last = writer.setData("/coalesce/a", "a" + i, StringSerializer.getInstance());
+            }
+            flusher.get(30, TimeUnit.SECONDS);
+            last.get(10, TimeUnit.SECONDS);
+            writer.flush();
+            Assert.assertThat(client.getData("/coalesce/a", StringSerializer.getInstance()), is("a200"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void closeFlushesAndRejectsNewWrites() throws Exception {
+        ZKCoalescingWriter writer = client.newCoalescingWriter(1, TimeUnit.HOURS);
+        CompletableFuture<Void> future = writer.setData("/coalesce/a", "closing", StringSerializer.getInstance());
+        writer.close();
+
+        Assert.assertTrue(future.isDone());
+        future.get();
+        Assert.assertThat(client.getData("/coalesce/a", StringSerializer.getInstance()), is("closing"));
+        try {
+            writer.setData("/coalesce/a", "late", StringSerializer.getInstance());
+            Assert.fail("writer is closed");
+        } catch (IllegalStateException e) {
+            Assert.assertThat(client.getData("/coalesce/a", StringSerializer.getInstance()), is("closing"));
+        }
+    }
+
+    @Test
+    public void failMissingNodeWithoutCreate() throws Exception {
+        try (ZKCoalescingWriter writer = client.newCoalescingWriter(1, TimeUnit.HOURS)) {
+            CompletableFuture<Void> missing = writer.setData("/coalesce/missing", "m", StringSerializer.getInstance());
+            CompletableFuture<Void> existing = writer.setData("/coalesce/b", "b2", StringSerializer.getInstance());
+            writer.flush();
+
+            existing.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(missing.isCompletedExceptionally());
+            Assert.assertThat(client.getData("/coalesce/b", StringSerializer.getInstance()), is("b2"));
+        }
+    }
+}
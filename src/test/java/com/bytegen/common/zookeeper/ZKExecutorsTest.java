@@ -0,0 +1,22 @@
+package com.bytegen.common.zookeeper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKExecutorsTest {
+
+    @Test
+    public void fallBackToPlatformThreads() throws Exception {
+        if (!ZKVirtualThreads.isSupported()) {
+            Assert.assertNull(ZKVirtualThreads.newThreadFactory("zookeeper-test-thread-", null));
+        }
+        Assert.assertThat(ZKExecutors.isVirtualThreads(), is(false));
+
+        Thread thread = ZKExecutors.newThreadFactory("zookeeper-test-thread-%d", true).newThread(() -> {
+        });
+        Assert.assertThat(thread.getName(), is("zookeeper-test-thread-0"));
+        Assert.assertTrue(thread.isDaemon());
+    }
+}
@@ -0,0 +1,87 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKNamespaceTest {
+
+    private static ZKEmbeddedServer server;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new ZKEmbeddedServer();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void resolvePathsInNamespace() throws Exception {
+        ZKClient client = ZKFacade.getClient(server.getConnectString(), "");
+        ZKClient tenant = ZKFacade.getClient(server.getConnectString(), "", "/tenant/");
+        ZKClient nested = tenant.usingNamespace("app");
+        try {
+            Assert.assertThat(tenant.getNamespace(), is("tenant"));
+            Assert.assertThat(nested.getNamespace(), is("tenant/app"));
+
+            nested.createPersistent("/config", "v1", StringSerializer.getInstance());
+            Assert.assertThat(client.getData("/tenant/app/config", StringSerializer.getInstance()), is("v1"));
+            Assert.assertThat(tenant.getData("/app/config", StringSerializer.getInstance()), is("v1"));
+            Assert.assertThat(nested.getChildrenNames("/"), is(Collections.singletonList("config")));
+            Assert.assertFalse(client.exists("/config"));
+        } finally {
+            nested.close();
+            tenant.close();
+            client.close();
+        }
+    }
+
+    @Test
+    public void shareOneConnection() throws Exception {
+        ZKClient client = ZKFacade.getClient(server.getConnectString(), "");
+        ZKClient tenant = ZKFacade.getClient(server.getConnectString(), "", "shared");
+        ZKClient view = client.usingNamespace("shared");
+        try {
+            Assert.assertSame(client.getFramework().getZookeeperClient(), tenant.getFramework().getZookeeperClient());
+            Assert.assertSame(client.getFramework().getZookeeperClient(), view.getFramework().getZookeeperClient());
+
+            tenant.createPersistent("/node", "v", StringSerializer.getInstance());
+            Assert.assertThat(view.getData("/node", StringSerializer.getInstance()), is("v"));
+        } finally {
+            view.close();
+            tenant.close();
+            client.close();
+        }
+    }
+
+    @Test
+    public void closeViewKeepsParentOpen() throws Exception {
+        ZKClient client = ZKFacade.getClient(server.getConnectString(), "");
+        try {
+            Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+            ZKClient view = client.usingNamespace("closing");
+            view.createPersistent("/node", "v", StringSerializer.getInstance());
+            view.close();
+            // closing twice releases the connection once
+            view.close();
+
+            Assert.assertThat(client.getFramework().getState(), is(CuratorFrameworkState.STARTED));
+            Assert.assertThat(client.getData("/closing/node", StringSerializer.getInstance()), is("v"));
+        } finally {
+            client.close();
+        }
+        Assert.assertThat(client.getFramework().getState(), is(CuratorFrameworkState.STOPPED));
+    }
+}
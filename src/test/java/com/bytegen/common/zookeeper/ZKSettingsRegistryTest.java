@@ -0,0 +1,132 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.serializer.PropertiesSerializer;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import com.bytegen.common.zookeeper.testing.ZKFaultProxy;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKSettingsRegistryTest {
+
+    private ZKEmbeddedServer serverA;
+    private ZKEmbeddedServer serverB;
+
+    @Before
+    public void init() throws Exception {
+        serverA = new ZKEmbeddedServer();
+        serverB = new ZKEmbeddedServer();
+    }
+
+    @After
+    public void close() throws Exception {
+        serverB.close();
+        serverA.close();
+    }
+
+    @Test
+    public void swapServersFromFile() throws Exception {
+        seed(serverA, "/swap", "a");
+        seed(serverB, "/swap", "b");
+
+        ZKFaultProxy proxyA = serverA.newFaultProxy();
+        System.setProperty("SWAPFILE.zookeeper.server", proxyA.getConnectString());
+        File file = File.createTempFile("zookeeper", ".properties");
+        ZKClient client = null;
+        try {
+            ZKSettingsRegistry registry = new ZKSettingsRegistry();
+            ZKEnvironmentSetting setting = registry.getSetting("SWAPFILE");
+            client = new ZKClient("SWAPFILE", setting.getZKServer(), setting.getZKAuth());
+            NodeCache cache = client.getNodeCache("/swap");
+            Assert.assertThat(client.getData("/swap", StringSerializer.getInstance()), is("a"));
+
+            Properties properties = new Properties();
+            properties.setProperty("SWAPFILE.zookeeper.server", serverB.getConnectString());
+            try (OutputStream output = new FileOutputStream(file)) {
+                properties.store(output, null);
+            }
+            registry.watchFile(file, 50, TimeUnit.MILLISECONDS);
+            Assert.assertThat(setting.getZKConnectString(), is(serverB.getConnectString()));
+
+            // old servers go away, the client moves to the new ones keeping its caches
+            proxyA.partition();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            String data = null;
+            while (!"b".equals(data) && System.nanoTime() < deadline) {
+                try {
+                    data = client.getData("/swap", StringSerializer.getInstance());
+                } catch (Exception e) {
+                    Thread.sleep(100);
+                }
+            }
+            Assert.assertThat(data, is("b"));
+            Assert.assertThat(client.getConnectString(), is(serverB.getConnectString()));
+            Assert.assertTrue(cache == client.getNodeCache("/swap"));
+            while (!isData(cache, "b") && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertTrue(isData(cache, "b"));
+        } finally {
+            if (null != client) {
+                client.close();
+            }
+            proxyA.close();
+            file.delete();
+            System.clearProperty("SWAPFILE.zookeeper.server");
+        }
+    }
+
+    @Test
+    public void swapServersFromNode() throws Exception {
+        System.setProperty("SWAPNODE.zookeeper.server", "127.0.0.1:1");
+        ZKClient bootstrap = serverB.newClient();
+        try {
+            ZKSettingsRegistry registry = new ZKSettingsRegistry();
+            ZKEnvironmentSetting setting = registry.getSetting("SWAPNODE");
+
+            Properties properties = new Properties();
+            properties.setProperty("SWAPNODE.zookeeper.server", "127.0.0.1:2");
+            bootstrap.createPersistent("/settings", properties, PropertiesSerializer.getInstance());
+            registry.watchNode(bootstrap, "/settings");
+            Assert.assertThat(setting.getZKServer(), is("127.0.0.1:1"));
+            Assert.assertThat(setting.getZKConnectString(), is("127.0.0.1:2"));
+
+            properties.setProperty("SWAPNODE.zookeeper.server", "127.0.0.1:3");
+            bootstrap.setData("/settings", properties, PropertiesSerializer.getInstance());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!"127.0.0.1:3".equals(setting.getZKConnectString()) && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertThat(setting.getZKConnectString(), is("127.0.0.1:3"));
+        } finally {
+            bootstrap.close();
+            System.clearProperty("SWAPNODE.zookeeper.server");
+        }
+    }
+
+    private static boolean isData(NodeCache cache, String data) {
+        ChildData current = cache.getCurrentData();
+        return null != current && data.equals(new String(current.getData(), ZKConstant.DEFAULT_CHARSET));
+    }
+
+    private static void seed(ZKEmbeddedServer server, String path, String data) throws Exception {
+        ZKClient client = server.newClient();
+        try {
+            client.createPersistent(path, data, StringSerializer.getInstance());
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.bytegen.common.zookeeper;
+
+import org.apache.zookeeper.KeeperException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKSingleFlightTest {
+
+    private final ZKSingleFlight<byte[]> flight = new ZKSingleFlight<>(byte[]::clone);
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> flight.execute("/a", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return new byte[]{1, 2, 3};
+                })));
+            }
+            // let every caller reach the flight before the load returns
+            Thread.sleep(200);
+            release.countDown();
+
+            List<byte[]> values = new ArrayList<>();
+            for (Future<byte[]> result : results) {
+                values.add(result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertThat(loads.get(), is(1));
+            for (byte[] value : values) {
+                Assert.assertArrayEquals(new byte[]{1, 2, 3}, value);
+            }
+            Assert.assertTrue("callers must not share the loaded array", values.get(0) != values.get(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sequentialCallsLoadAgain() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        byte[] first = flight.execute("/a", () -> new byte[]{(byte) loads.incrementAndGet()});
+        byte[] second = flight.execute("/a", () -> new byte[]{(byte) loads.incrementAndGet()});
+
+        Assert.assertThat(first[0], is((byte) 1));
+        Assert.assertThat(second[0], is((byte) 2));
+    }
+
+    @Test(expected = KeeperException.NoNodeException.class)
+    public void failureIsRethrown() throws Exception {
+        flight.execute("/a", () -> {
+            throw new KeeperException.NoNodeException("/a");
+        });
+    }
+
+    @Test
+    public void asyncCallsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        List<CompletableFuture<byte[]>> started = new ArrayList<>();
+        CompletableFuture<byte[]> first = flight.executeAsync("/a", loaded -> {
+            loads.incrementAndGet();
+            started.add(loaded);
+        });
+        CompletableFuture<byte[]> second = flight.executeAsync("/a", loaded -> loads.incrementAndGet());
+
+        started.get(0).complete(new byte[]{7});
+        Assert.assertThat(loads.get(), is(1));
+        Assert.assertArrayEquals(new byte[]{7}, first.get());
+        Assert.assertArrayEquals(new byte[]{7}, second.get());
+    }
+
+    @Test
+    public void errorReleasesTheFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> leader = executor.submit(() -> flight.execute("/a", () -> {
+                release.await();
+                throw new AssertionError("load failed");
+            }));
+            Thread.sleep(100);
+            Future<byte[]> follower = executor.submit(() -> flight.execute("/a", () -> new byte[]{1}));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<byte[]> result : Arrays.asList(leader, follower)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    Assert.fail("the error should reach every caller of the flight");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof AssertionError);
+                }
+            }
+            Assert.assertArrayEquals(new byte[]{2}, flight.execute("/a", () -> new byte[]{2}));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asyncErrorReleasesTheFlight() throws Exception {
+        CompletableFuture<byte[]> failed = flight.executeAsync("/a", loaded -> {
+            throw new StackOverflowError();
+        });
+        Assert.assertTrue(failed.isCompletedExceptionally());
+        Assert.assertArrayEquals(new byte[]{3}, flight.executeAsync("/a", loaded -> loaded.complete(new byte[]{3})).get());
+    }
+
+    @Test
+    public void callsAfterForgetStartNewLoad() throws Exception {
+        List<CompletableFuture<byte[]>> started = new ArrayList<>();
+        CompletableFuture<byte[]> before = flight.executeAsync("/a/b", started::add);
+        CompletableFuture<byte[]> sibling = flight.executeAsync("/ab", started::add);
+        flight.forget("/a");
+        CompletableFuture<byte[]> after = flight.executeAsync("/a/b", started::add);
+        CompletableFuture<byte[]> siblingAfter = flight.executeAsync("/ab", started::add);
+
+        Assert.assertThat(started.size(), is(3));
+        started.get(0).complete(new byte[]{1});
+        started.get(1).complete(new byte[]{2});
+        started.get(2).complete(new byte[]{3});
+        Assert.assertArrayEquals(new byte[]{1}, before.get());
+        Assert.assertArrayEquals(new byte[]{2}, sibling.get());
+        Assert.assertArrayEquals(new byte[]{2}, siblingAfter.get());
+        Assert.assertArrayEquals(new byte[]{3}, after.get());
+    }
+
+    @Test
+    public void forgetKeyKeepsDescendants() throws Exception {
+        List<CompletableFuture<byte[]>> started = new ArrayList<>();
+        flight.executeAsync("/a", started::add);
+        flight.executeAsync("/a/b", started::add);
+        flight.forgetKey("/a");
+        flight.executeAsync("/a", started::add);
+        flight.executeAsync("/a/b", started::add);
+
+        Assert.assertThat(started.size(), is(3));
+    }
+}
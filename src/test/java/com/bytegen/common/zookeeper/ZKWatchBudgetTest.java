@@ -0,0 +1,145 @@
+package com.bytegen.common.zookeeper;
+
+import com.bytegen.common.zookeeper.limit.ZKWatchBudget;
+import com.bytegen.common.zookeeper.limit.ZKWatchBudgetExceededException;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKWatchBudgetTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+        for (String child : new String[]{"a", "b", "c"}) {
+            client.createPersistent("/watch/" + child + "/x", "x", StringSerializer.getInstance());
+        }
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void countCacheWatches() throws Exception {
+        client.getNodeCache("/watch/a");
+        client.getPathChildCache("/watch");
+        client.getTreeCache("/watch/a");
+        // node cache 1, children cache 1 + 3, tree cache 2 per node
+        awaitTotal(client, 1 + 4 + 4);
+
+        ZKWatchSnapshot snapshot = client.getWatchSnapshot();
+        Assert.assertThat(snapshot.getCaches().size(), is(3));
+        Assert.assertThat(snapshot.getCaches().get(2).getType(), is(ZKWatchSnapshot.CacheType.NODE));
+        Assert.assertNull(snapshot.getBudget());
+
+        client.createPersistent("/watch/a/y");
+        awaitTotal(client, 1 + 4 + 6);
+
+        // namespace views share the connection and its counts
+        ZKClient view = client.usingNamespace("watch");
+        try {
+            view.getNodeCache("/b");
+            awaitTotal(client, 1 + 4 + 6 + 1);
+            Assert.assertTrue(view.getWatchSnapshot().getCaches().stream()
+                    .anyMatch(cache -> cache.getPath().equals("/watch/b")));
+        } finally {
+            view.close();
+        }
+        Assert.assertThat(client.getWatchSnapshot().getTotalWatches(), is(1L + 4 + 6));
+    }
+
+    @Test
+    public void closeClosesCachesOfClient() throws Exception {
+        ZKClient view = client.usingNamespace("watch");
+        view.getNodeCache("/a");
+        view.getPathChildCache("/b");
+        TreeCache tree = view.getTreeCache("/c");
+        awaitTotal(client, 1 + 2 + 4);
+
+        view.close();
+
+        Assert.assertTrue(view.getNodeCacheMap().isEmpty());
+        Assert.assertTrue(view.getPathChildrenCacheMap().isEmpty());
+        Assert.assertTrue(view.getTreeCacheMap().isEmpty());
+        Assert.assertNull(tree.getCurrentData("/c/x"));
+        Assert.assertThat(client.getWatchSnapshot().getTotalWatches(), is(0L));
+        try {
+            view.getTreeCache("/c");
+            Assert.fail("a closed client should not open caches");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectCacheOverBudget() throws Exception {
+        client.setWatchBudget(ZKWatchBudget.rejecting(10, 5));
+        try {
+            client.getTreeCache("/watch");
+            Assert.fail("tree cache of 7 nodes should be rejected");
+        } catch (ZKWatchBudgetExceededException e) {
+            Assert.assertTrue(client.getTreeCacheMap().isEmpty());
+        }
+
+        client.getPathChildCache("/watch");
+        client.getTreeCache("/watch/a");
+        try {
+            // 4 + 4 watches used, the connection has 2 left
+            client.getTreeCache("/watch/b");
+            Assert.fail("the connection budget should be exhausted");
+        } catch (ZKWatchBudgetExceededException e) {
+            Assert.assertThat(client.getWatchSnapshot().getTotalWatches(), is(8L));
+        }
+        client.getNodeCache("/watch/b");
+    }
+
+    @Test
+    public void degradeTreeCacheDepth() throws Exception {
+        client.setWatchBudget(ZKWatchBudget.degrading(0, 5));
+        TreeCache cache = client.getTreeCache("/watch");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (null == cache.getCurrentData("/watch/c") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // root with children and data watches of its 3 children
+        awaitTotal(client, 2 + 3);
+
+        ZKWatchSnapshot.CacheWatches watches = client.getWatchSnapshot().getCaches().get(0);
+        Assert.assertThat(watches.getMaxDepth(), is(1));
+        Assert.assertNotNull(cache.getCurrentData("/watch/a"));
+        Assert.assertNull(cache.getCurrentData("/watch/a/x"));
+
+        try {
+            client.getPathChildCache("/watch/a/x/y/z");
+            client.setWatchBudget(ZKWatchBudget.degrading(6, 0));
+            client.getPathChildCache("/watch");
+            Assert.fail("path children cache can't be degraded");
+        } catch (ZKWatchBudgetExceededException e) {
+            Assert.assertThat(client.getPathChildrenCacheMap().size(), is(1));
+        }
+    }
+
+    private static void awaitTotal(ZKClient client, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getWatchSnapshot().getTotalWatches() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertThat(client.getWatchSnapshot().toString(), client.getWatchSnapshot().getTotalWatches(), is(expected));
+    }
+}
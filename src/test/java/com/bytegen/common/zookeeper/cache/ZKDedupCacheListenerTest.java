@@ -0,0 +1,131 @@
+package com.bytegen.common.zookeeper.cache;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.serializer.PropertiesSerializer;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKDedupCacheListenerTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void nodeListenerDropsIdenticalWrite() throws Exception {
+        client.createPersistent("/dedup/node", "v1", StringSerializer.getInstance());
+        NodeCache cache = client.getNodeCache("/dedup/node");
+        await(() -> null != cache.getCurrentData());
+
+        List<String> events = new ArrayList<>();
+        ZKDedupNodeCacheListener<String> listener = client.addNodeContentListener("/dedup/node",
+                StringSerializer.getInstance(), (path, oldData, newData) -> record(events, oldData + "->" + newData));
+        client.setData("/dedup/node", "v1", StringSerializer.getInstance());
+        await(() -> listener.getSuppressedCount() > 0);
+        client.setData("/dedup/node", "v2", StringSerializer.getInstance());
+        await(() -> size(events) > 0);
+
+        Assert.assertThat(events, is(Arrays.asList("v1->v2")));
+    }
+
+    @Test
+    public void pathChildrenListenerDropsIdenticalWrite() throws Exception {
+        client.createPersistent("/dedup/children/a", "v1", StringSerializer.getInstance());
+        PathChildrenCache cache = client.getPathChildCache("/dedup/children");
+        await(() -> !cache.getCurrentData().isEmpty());
+
+        List<String> events = new ArrayList<>();
+        ZKDedupPathChildrenCacheListener<String> listener = client.addPathChildContentListener("/dedup/children",
+                StringSerializer.getInstance(), (path, oldData, newData) -> record(events, path + ":" + oldData + "->" + newData));
+        client.setData("/dedup/children/a", "v1", StringSerializer.getInstance());
+        await(() -> listener.getSuppressedCount() > 0);
+        client.setData("/dedup/children/a", "v2", StringSerializer.getInstance());
+        await(() -> size(events) > 0);
+
+        Assert.assertThat(events, is(Arrays.asList("/dedup/children/a:v1->v2")));
+    }
+
+    @Test
+    public void registerTakesBaseLineAfterListenerAdded() throws Exception {
+        NodeCache cache = client.getNodeCache("/dedup/late");
+        List<String> events = new ArrayList<>();
+        ZKDedupNodeCacheListener<String> listener = new ZKDedupNodeCacheListener<>(cache,
+                StringSerializer.getInstance(), (path, oldData, newData) -> record(events, oldData + "->" + newData));
+        // changed after the listener was created but before it was added, so no event reaches it
+        client.createPersistent("/dedup/late", "v1", StringSerializer.getInstance());
+        await(() -> null != cache.getCurrentData());
+
+        listener.register(() -> client.addNodeCacheListener("/dedup/late", listener));
+        client.setData("/dedup/late", "v2", StringSerializer.getInstance());
+        await(() -> size(events) > 0);
+
+        Assert.assertThat(events, is(Arrays.asList("v1->v2")));
+    }
+
+    @Test
+    public void reportEmptyPropertiesNode() throws Exception {
+        NodeCache cache = client.getNodeCache("/dedup/properties");
+        List<String> events = new ArrayList<>();
+        client.addNodePropertiesListener("/dedup/properties", (path, delta, current) ->
+                record(events, delta.getAdded().keySet() + " " + (null == current ? null : current.size())));
+
+        client.createPersistent("/dedup/properties", new Properties(), PropertiesSerializer.getInstance());
+        await(() -> size(events) > 0);
+        // empty to empty changes no key
+        client.setData("/dedup/properties", new Properties(), PropertiesSerializer.getInstance());
+        Properties data = new Properties();
+        data.setProperty("key", "value");
+        client.setData("/dedup/properties", data, PropertiesSerializer.getInstance());
+        await(() -> size(events) > 1);
+
+        Assert.assertNotNull(cache.getCurrentData());
+        Assert.assertThat(events, is(Arrays.asList("[] 0", "[key] 1")));
+    }
+
+    private static void record(List<String> events, String event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    private static int size(List<String> events) {
+        synchronized (events) {
+            return events.size();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.bytegen.common.zookeeper.cache;
+
+import com.bytegen.common.zookeeper.serializer.PropertiesSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKPropertiesDeltaTest {
+
+    @Test
+    public void between() throws Exception {
+        Properties oldData = new Properties();
+        oldData.setProperty("kept", "1");
+        oldData.setProperty("changed", "1");
+        oldData.setProperty("removed", "1");
+        Properties newData = new Properties();
+        newData.setProperty("kept", "1");
+        newData.setProperty("changed", "2");
+        newData.setProperty("added", "1");
+
+        ZKPropertiesDelta delta = ZKPropertiesDelta.between(oldData, newData);
+        Assert.assertThat(delta.getAdded().keySet().toString(), is("[added]"));
+        Assert.assertThat(delta.getRemoved().keySet().toString(), is("[removed]"));
+        Assert.assertThat(delta.getChanged().get("changed"), is("2"));
+        Assert.assertThat(delta.getChanged().size(), is(1));
+    }
+
+    @Test
+    public void reserializedPropertiesHaveNoDelta() throws Exception {
+        Properties data = new Properties();
+        data.setProperty("key", "value");
+        byte[] first = PropertiesSerializer.getInstance().serialize(data);
+        Thread.sleep(1100);
+        byte[] second = PropertiesSerializer.getInstance().serialize(data);
+
+        // the timestamp comment makes the bytes differ, the keys do not
+        Assert.assertFalse(Arrays.equals(first, second));
+        Assert.assertTrue(ZKPropertiesDelta.between(PropertiesSerializer.getInstance().deserialize(first),
+                PropertiesSerializer.getInstance().deserialize(second)).isEmpty());
+    }
+
+    @Test
+    public void reportAddedEmptyProperties() throws Exception {
+        List<ZKPropertiesDelta> deltas = new ArrayList<>();
+        ZKContentListener<Properties> listener = ZKPropertiesDeltaListener.asContentListener(
+                (path, delta, current) -> deltas.add(delta));
+
+        listener.contentChanged("/p", null, new Properties());
+        listener.contentChanged("/p", new Properties(), new Properties());
+        listener.contentChanged("/p", new Properties(), null);
+
+        Assert.assertThat(deltas.size(), is(2));
+        Assert.assertTrue(deltas.get(0).isEmpty());
+        Assert.assertTrue(deltas.get(1).isEmpty());
+    }
+}
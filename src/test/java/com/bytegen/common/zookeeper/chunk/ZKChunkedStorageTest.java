@@ -0,0 +1,207 @@
+package com.bytegen.common.zookeeper.chunk;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.zookeeper.KeeperException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKChunkedStorageTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void manifestEncoding() {
+        ZKChunkManifest manifest = new ZKChunkManifest(0x1234L, 2500, 1000, ZKChunkedStorage.sha256().digest(new byte[]{1}));
+        ZKChunkManifest decoded = ZKChunkManifest.fromBytes(manifest.toBytes());
+
+        Assert.assertThat(decoded.getGeneration(), is(0x1234L));
+        Assert.assertThat(decoded.getLength(), is(2500L));
+        Assert.assertThat(decoded.getChunkSize(), is(1000));
+        Assert.assertThat(decoded.getChunkCount(), is(3));
+        Assert.assertThat(decoded.chunkLength(2), is(500));
+        Assert.assertArrayEquals(manifest.getSha256(), decoded.getSha256());
+        Assert.assertTrue(decoded.isOwnChunk(decoded.chunkName(2)));
+        Assert.assertFalse(ZKChunkManifest.isManifest("plain".getBytes()));
+    }
+
+    @Test
+    public void writeAndReadRoundTrip() throws Exception {
+        ZKChunkedStorage storage = new ZKChunkedStorage(client, 1000, 2);
+        byte[] data = random(10500, 1);
+        ZKChunkManifest manifest = storage.write("/chunk/value", data);
+
+        Assert.assertThat(manifest.getChunkCount(), is(11));
+        Assert.assertArrayEquals(data, storage.read("/chunk/value"));
+        Assert.assertArrayEquals(data, readStream(storage, "/chunk/value"));
+
+        // rewriting deletes the replaced generation
+        byte[] smaller = random(1500, 2);
+        storage.write("/chunk/value", smaller);
+        Assert.assertArrayEquals(smaller, storage.read("/chunk/value"));
+        Assert.assertThat(client.getChildrenNames("/chunk/value").size(), is(2));
+
+        byte[] empty = new byte[0];
+        storage.write("/chunk/value", empty);
+        Assert.assertArrayEquals(empty, storage.read("/chunk/value"));
+    }
+
+    @Test
+    public void readWithDifferentChunkSize() throws Exception {
+        byte[] data = random(7777, 3);
+        new ZKChunkedStorage(client, 1000, 4).write("/chunk/value", data);
+
+        Assert.assertArrayEquals(data, new ZKChunkedStorage(client, 300, 4).read("/chunk/value"));
+        Assert.assertArrayEquals(data, readStream(new ZKChunkedStorage(client, 4096, 1), "/chunk/value"));
+    }
+
+    @Test
+    public void detectCorruptedChunk() throws Exception {
+        ZKChunkedStorage storage = new ZKChunkedStorage(client, 1000, 2);
+        ZKChunkManifest manifest = storage.write("/chunk/value", random(3000, 4));
+        client.getFramework().setData().forPath("/chunk/value/" + manifest.chunkName(1), random(1000, 5));
+
+        try {
+            storage.read("/chunk/value");
+            Assert.fail("corrupted chunk should fail the checksum");
+        } catch (ZKChunkCorruptedException e) {
+            Assert.assertTrue(e.getMessage().contains("Checksum"));
+        }
+        client.getFramework().setData().forPath("/chunk/value/" + manifest.chunkName(1), random(10, 5));
+        try {
+            storage.read("/chunk/value");
+            Assert.fail("truncated chunk should fail");
+        } catch (ZKChunkCorruptedException e) {
+            Assert.assertTrue(e.getMessage().contains("length"));
+        }
+    }
+
+    @Test
+    public void concurrentWritersKeepValueIntact() throws Exception {
+        int writers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CyclicBarrier barrier = new CyclicBarrier(writers);
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            values.add(random(5000 + i, 10 + i));
+        }
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                byte[] value = values.get(i);
+                results.add(executor.submit(() -> {
+                    ZKChunkedStorage storage = new ZKChunkedStorage(client, 1000, 2);
+                    int committed = 0;
+                    for (int round = 0; round < 5; round++) {
+                        barrier.await(10, TimeUnit.SECONDS);
+                        try {
+                            storage.write("/chunk/value", value);
+                            committed++;
+                        } catch (KeeperException.BadVersionException e) {
+                            // lost the switch to another writer
+                        }
+                        byte[] read = storage.read("/chunk/value");
+                        Assert.assertTrue(values.stream().anyMatch(v -> Arrays.equals(v, read)));
+                    }
+                    return committed;
+                }));
+            }
+            int committed = 0;
+            for (Future<Integer> result : results) {
+                committed += result.get(60, TimeUnit.SECONDS);
+            }
+            Assert.assertTrue(committed >= 5);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // losers cleaned their chunks, winners the replaced generations
+        ZKChunkedStorage storage = new ZKChunkedStorage(client);
+        ZKChunkManifest manifest = storage.readManifest("/chunk/value");
+        Assert.assertThat(client.getChildrenNames("/chunk/value").size(), is(manifest.getChunkCount()));
+        byte[] read = storage.read("/chunk/value");
+        Assert.assertThat(read.length, is((int) manifest.getLength()));
+    }
+
+    @Test
+    public void writeDeletesOrphanedChunks() throws Exception {
+        ZKChunkedStorage storage = new ZKChunkedStorage(client, 1000, 2);
+        storage.write("/chunk/value", random(2500, 6));
+        // left by a writer which lost the switch and failed to clean up
+        String orphan = new ZKChunkManifest(0x42L, 1, 1, new byte[32]).chunkName(0);
+        client.getFramework().create().forPath("/chunk/value/" + orphan, new byte[]{1});
+        client.getFramework().create().forPath("/chunk/value/other", new byte[0]);
+
+        ZKChunkManifest manifest = storage.write("/chunk/value", random(1500, 7));
+        List<String> children = client.getChildrenNames("/chunk/value");
+        Assert.assertFalse(children.contains(orphan));
+        Assert.assertTrue(children.contains("other"));
+        Assert.assertThat(children.size(), is(manifest.getChunkCount() + 1));
+    }
+
+    @Test
+    public void sweepKeepsChunksNewerThanManifest() throws Exception {
+        ZKChunkedStorage storage = new ZKChunkedStorage(client, 1000, 2);
+        byte[] data = random(2500, 8);
+        storage.write("/chunk/value", data);
+        String orphan = new ZKChunkManifest(0x42L, 1, 1, new byte[32]).chunkName(0);
+        client.getFramework().create().forPath("/chunk/value/" + orphan, new byte[]{1});
+
+        // may belong to a write in progress
+        Assert.assertThat(storage.sweep("/chunk/value"), is(0));
+        // a later switch of the manifest makes it stale
+        client.getFramework().setData().forPath("/chunk/value", client.getFramework().getData().forPath("/chunk/value"));
+        Assert.assertThat(storage.sweep("/chunk/value"), is(1));
+        Assert.assertFalse(client.getChildrenNames("/chunk/value").contains(orphan));
+        Assert.assertArrayEquals(data, storage.read("/chunk/value"));
+        Assert.assertThat(storage.sweep("/chunk/missing"), is(0));
+    }
+
+    private static byte[] readStream(ZKChunkedStorage storage, String path) throws Exception {
+        try (InputStream in = storage.openStream(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[333];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,75 @@
+package com.bytegen.common.zookeeper.limit;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ZKRateLimiterTest {
+
+    private static ZKEmbeddedServer server;
+    private static ZKClient client;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void rejectedOperationKeepsOtherPermits() throws Exception {
+        ZKRateLimiter limiter = new ZKRateLimiter()
+                .limitAll(ZKRateLimitRule.failFast(0.1, 2))
+                .limitPathPrefix("/hot", ZKRateLimitRule.failFast(0.1, 1));
+
+        limiter.acquire(ZKActionType.GET_DATA, "/hot/a", client);
+        try {
+            limiter.acquire(ZKActionType.GET_DATA, "/hot/a", client);
+            Assert.fail("prefix limit should reject");
+        } catch (ZKThrottledException e) {
+            // expected
+        }
+        // the global permit taken by the rejected operation was returned
+        limiter.acquire(ZKActionType.GET_DATA, "/cold", client);
+    }
+
+    @Test
+    public void blockedOperationWaitsOnceForAllLimits() throws Exception {
+        ZKRateLimiter limiter = new ZKRateLimiter()
+                .limitAll(ZKRateLimitRule.blocking(10, 1))
+                .limit(ZKActionType.GET_DATA, ZKRateLimitRule.blocking(10, 1));
+
+        limiter.acquire(ZKActionType.GET_DATA, "/a", client);
+        long start = System.nanoTime();
+        limiter.acquire(ZKActionType.GET_DATA, "/a", client);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("waited " + waited, waited >= 50 && waited < 180);
+    }
+
+    @Test
+    public void queueRejectsLongWaitWithoutWaiting() throws Exception {
+        ZKRateLimiter limiter = new ZKRateLimiter()
+                .limitAll(ZKRateLimitRule.blocking(1, 1))
+                .limit(ZKActionType.SET_DATA, ZKRateLimitRule.queueing(0.1, 1, 100, TimeUnit.MILLISECONDS));
+
+        limiter.acquire(ZKActionType.SET_DATA, "/a", client);
+        long start = System.nanoTime();
+        try {
+            limiter.acquire(ZKActionType.SET_DATA, "/a", client);
+            Assert.fail("queue wait exceeds its max");
+        } catch (ZKThrottledException e) {
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.bytegen.common.zookeeper.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ZKTokenBucketTest {
+
+    @Test
+    public void grantBurstThenRejectFailFast() {
+        ZKTokenBucket bucket = new ZKTokenBucket(1, 3);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(bucket.tryAcquire());
+        }
+        Assert.assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void reserveSpacesPermitsByInterval() {
+        ZKTokenBucket bucket = new ZKTokenBucket(10, 1);
+        Assert.assertEquals(0, bucket.reserve(Long.MAX_VALUE));
+
+        long second = bucket.reserve(Long.MAX_VALUE);
+        long third = bucket.reserve(Long.MAX_VALUE);
+        long interval = TimeUnit.MILLISECONDS.toNanos(100);
+        Assert.assertTrue(second > interval / 2 && second <= interval);
+        Assert.assertTrue(third > interval && third <= 2 * interval);
+    }
+
+    @Test
+    public void rejectWaitBeyondMaxQueueWait() {
+        ZKTokenBucket bucket = new ZKTokenBucket(1, 1);
+        Assert.assertEquals(0, bucket.reserve(0));
+        Assert.assertEquals(-1, bucket.reserve(TimeUnit.MILLISECONDS.toNanos(100)));
+        // a rejected reservation takes nothing
+        Assert.assertTrue(bucket.reserve(TimeUnit.SECONDS.toNanos(2)) > 0);
+    }
+
+    @Test
+    public void refundReturnsPermit() {
+        ZKTokenBucket bucket = new ZKTokenBucket(1, 1);
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertFalse(bucket.tryAcquire());
+        bucket.refund();
+        Assert.assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void refillAfterIdle() throws InterruptedException {
+        ZKTokenBucket bucket = new ZKTokenBucket(20, 2);
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertFalse(bucket.tryAcquire());
+        Thread.sleep(150);
+        // idle time refills up to the burst only
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertFalse(bucket.tryAcquire());
+    }
+}
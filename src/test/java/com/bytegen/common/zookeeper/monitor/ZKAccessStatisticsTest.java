@@ -0,0 +1,109 @@
+package com.bytegen.common.zookeeper.monitor;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKAccessStatisticsTest {
+
+    @Test
+    public void findHeavyHittersAmongManyKeys() {
+        ZKHeavyHitters hitters = new ZKHeavyHitters(5, 1024, 4);
+        for (int i = 0; i < 100000; i++) {
+            hitters.add("/cold/" + i);
+            if (i % 10 == 0) {
+                hitters.add("/hot/a");
+            }
+            if (i % 20 == 0) {
+                hitters.add("/hot/b");
+            }
+        }
+
+        List<ZKAccessReport.HotKey> top = hitters.top();
+        Assert.assertThat(top.size(), is(5));
+        Assert.assertThat(top.get(0).getKey(), is("/hot/a"));
+        Assert.assertThat(top.get(1).getKey(), is("/hot/b"));
+        // never undercount, and overcount stays within the sketch bound
+        Assert.assertTrue(hitters.estimate("/hot/a") >= 10000);
+        Assert.assertTrue(hitters.estimate("/hot/a") < 10000 + 115000 * 3 / 1024);
+        Assert.assertTrue(hitters.estimate("/cold/7") >= 1);
+    }
+
+    @Test
+    public void separateKeysWithSameHashCode() {
+        ZKCountMinSketch sketch = new ZKCountMinSketch(1024, 4);
+        // "Aa" and "BB" have the same String hash code
+        sketch.add("Aa", 100);
+        Assert.assertThat(sketch.estimate("Aa"), is(100L));
+        Assert.assertThat(sketch.estimate("BB"), is(0L));
+    }
+
+    @Test
+    public void countPathsByRealPath() throws Exception {
+        try (ZKEmbeddedServer server = new ZKEmbeddedServer();
+             ZKAccessStatistics statistics = ZKAccessStatistics.start(3, 0, TimeUnit.SECONDS)) {
+            ZKClient client = server.newClient();
+            ZKClient namespaced = client.usingNamespace("ns");
+            try {
+                statistics.onAction(ZKActionType.GET_DATA, client, "a", null);
+                statistics.onAction(ZKActionType.GET_DATA, client, "/a", null);
+                statistics.onAction(ZKActionType.GET_DATA, namespaced, "/", null);
+
+                Assert.assertThat(statistics.estimate("/a"), is(2L));
+                Assert.assertThat(statistics.estimate(ZKActionType.GET_DATA, "/a"), is(2L));
+                Assert.assertThat(statistics.estimate("/ns"), is(1L));
+            } finally {
+                namespaced.close();
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void reportHotPathsAndSubscriberTimings() throws Exception {
+        try (ZKEmbeddedServer server = new ZKEmbeddedServer();
+             ZKAccessStatistics statistics = ZKAccessStatistics.start(3, 0, TimeUnit.SECONDS)) {
+            ZKClient client = server.newClient();
+            try {
+                client.createPersistent("/stats/a", "a", StringSerializer.getInstance());
+                for (int i = 0; i < 20; i++) {
+                    client.getData("/stats/a");
+                }
+                client.getChildrenNames("/stats");
+
+                long deadline = System.currentTimeMillis() + 5000;
+                while (statistics.estimate(ZKActionType.GET_CHILD_NAMES, "/stats") < 1
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                AtomicReference<ZKAccessReport> reported = new AtomicReference<>();
+                statistics.addReportListener(reported::set);
+                ZKAccessReport report = statistics.report();
+
+                Assert.assertSame(report, reported.get());
+                Assert.assertThat(report.getHotPaths().get(0).getKey(), is("/stats/a"));
+                Assert.assertThat(report.getHotOperations().get(0).getKey(), is("GET_DATA /stats/a"));
+                Assert.assertThat(report.getTypeCounts().get(ZKActionType.GET_DATA), is(20L));
+                Assert.assertThat(report.getTypeCounts().get(ZKActionType.GET_CHILD_NAMES), is(1L));
+                Assert.assertTrue(report.getListenerTimings().stream()
+                        .anyMatch(timing -> timing.getListener().startsWith(ZKAccessStatistics.class.getName() + "@")
+                                && timing.getCount() >= 20));
+
+                // a report starts a new interval
+                Assert.assertThat(statistics.snapshot().getTotal(), is(0L));
+                Assert.assertThat(statistics.estimate("/stats/a"), is(0L));
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
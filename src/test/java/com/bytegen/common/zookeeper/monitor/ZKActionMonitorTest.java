@@ -0,0 +1,60 @@
+package com.bytegen.common.zookeeper.monitor;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKActionMonitorTest {
+
+    @Test
+    public void timeSubscribersOfOneClassSeparately() throws Exception {
+        ZKActionMonitor monitor = ZKActionMonitor.getInstance();
+        Counting first = new Counting();
+        Counting second = new Counting();
+        try (ZKEmbeddedServer server = new ZKEmbeddedServer()) {
+            ZKClient client = server.newClient();
+            monitor.addSubscriber(first);
+            monitor.addSubscriber(second);
+            try {
+                for (int i = 0; i < 10; i++) {
+                    monitor.triggerAction(ZKActionType.GET_DATA, client, "/monitor", null);
+                }
+                long deadline = System.currentTimeMillis() + 5000;
+                while (second.count.get() < 10 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+
+                List<ZKListenerTiming> timings = monitor.getSubscriberTimings().stream()
+                        .filter(timing -> timing.getListener().startsWith(Counting.class.getName() + "@"))
+                        .collect(Collectors.toList());
+                Assert.assertThat(timings.size(), is(2));
+                Assert.assertNotEquals(timings.get(0).getListener(), timings.get(1).getListener());
+                for (ZKListenerTiming timing : timings) {
+                    Assert.assertThat(timing.getCount(), is(10L));
+                    Assert.assertTrue(timing.getTotalNanos() >= timing.getMaxNanos());
+                }
+            } finally {
+                monitor.removeSubscriber(first);
+                monitor.removeSubscriber(second);
+                client.close();
+            }
+        }
+    }
+
+    private static final class Counting implements ZKActionListener {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void onAction(ZKActionType type, ZKClient client, String path, Object data) {
+            count.incrementAndGet();
+        }
+    }
+}
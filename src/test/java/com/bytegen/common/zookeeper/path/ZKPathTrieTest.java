@@ -0,0 +1,48 @@
+package com.bytegen.common.zookeeper.path;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKPathTrieTest {
+
+    @Test
+    public void pathIsNormalizedAndInterned() throws Exception {
+        ZKPath path = ZKPath.of("com/bytegen/dev/");
+        Assert.assertThat(path.getPath(), is("/com/bytegen/dev"));
+        Assert.assertTrue(path == ZKPath.of("com/bytegen/dev/"));
+        Assert.assertTrue(path == ZKPath.of("/com/bytegen/dev"));
+        Assert.assertThat(path.getParent().getPath(), is("/com/bytegen"));
+        Assert.assertTrue(ZKPath.of(null).isRoot());
+    }
+
+    @Test
+    public void unusedPathIsNotRetained() throws Exception {
+        WeakReference<ZKPath> unused = new WeakReference<>(ZKPath.of("/com/bytegen/unused-" + System.nanoTime()));
+        for (int i = 0; i < 50 && null != unused.get(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(unused.get());
+    }
+
+    @Test
+    public void exactAndClosestLookup() throws Exception {
+        ZKPathTrie<String> trie = new ZKPathTrie<>();
+        trie.put(ZKPath.of("/com"), "com");
+        trie.put(ZKPath.of("/com/bytegen/dev"), "dev");
+
+        Assert.assertThat(trie.get(ZKPath.of("/com/bytegen/dev")), is("dev"));
+        Assert.assertNull(trie.get(ZKPath.of("/com/bytegen")));
+        Assert.assertThat(trie.getClosest(ZKPath.of("/com/bytegen/dev/a/b")), is("dev"));
+        Assert.assertThat(trie.getClosest(ZKPath.of("/com/bytegen")), is("com"));
+        Assert.assertThat(trie.getClosest(ZKPath.of("/com/bytegenx")), is("com"));
+        Assert.assertNull(trie.getClosest(ZKPath.of("/org")));
+
+        trie.remove(ZKPath.of("/com/bytegen/dev"));
+        Assert.assertThat(trie.getClosest(ZKPath.of("/com/bytegen/dev/a/b")), is("com"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.bytegen.common.zookeeper.serializer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKBinarySerializerTest {
+
+    @Test
+    public void primitives() {
+        LongSerializer longSerializer = LongSerializer.getInstance();
+        for (long value : new long[]{0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1234567890123L}) {
+            Assert.assertThat(longSerializer.decode(longSerializer.encode(value)), is(value));
+        }
+        IntSerializer intSerializer = IntSerializer.getInstance();
+        for (int value : new int[]{0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 65536}) {
+            Assert.assertThat(intSerializer.decode(intSerializer.encode(value)), is(value));
+        }
+        BooleanSerializer booleanSerializer = BooleanSerializer.getInstance();
+        Assert.assertTrue(booleanSerializer.decode(booleanSerializer.encode(true)));
+        Assert.assertFalse(booleanSerializer.decode(booleanSerializer.encode(false)));
+
+        byte[] buffer = new byte[12];
+        Assert.assertThat(longSerializer.encode(42L, buffer, 4), is(12));
+        Assert.assertThat(longSerializer.serialize(42L), is(Arrays.copyOfRange(buffer, 4, 12)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTextCounter() {
+        LongSerializer.getInstance().decode("42".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void stringMap() {
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("host", "10.0.0.1");
+        data.put("", "");
+        data.put("名字", "值 éß");
+        data.put("emoji", "😀 ok");
+        data.put("unpaired", "a\uD800b");
+
+        Map<String, String> decoded = StringMapSerializer.getInstance().deserialize(StringMapSerializer.getInstance().serialize(data));
+        Assert.assertThat(new ArrayList<>(decoded.keySet()), is(new ArrayList<>(data.keySet())));
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            String expected = new String(entry.getValue().getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            Assert.assertThat(decoded.get(entry.getKey()), is(expected));
+        }
+
+        Map<String, String> empty = Collections.emptyMap();
+        Assert.assertTrue(StringMapSerializer.getInstance().deserialize(StringMapSerializer.getInstance().serialize(empty)).isEmpty());
+    }
+
+    @Test
+    public void schema() {
+        ZKSchemaSerializer<Server> serializer = Server.schema(true);
+        Server server = new Server();
+        server.host = "zk-1";
+        server.port = 2181;
+        server.weight = -7L;
+        server.enabled = true;
+        server.load = 0.75;
+        server.labels = Collections.singletonMap("zone", "a");
+
+        Server decoded = serializer.deserialize(serializer.serialize(server));
+        Assert.assertThat(decoded.host, is("zk-1"));
+        Assert.assertThat(decoded.port, is(2181));
+        Assert.assertThat(decoded.weight, is(-7L));
+        Assert.assertTrue(decoded.enabled);
+        Assert.assertThat(decoded.load, is(0.75));
+        Assert.assertThat(decoded.labels, is(server.labels));
+
+        // null fields are absent and keep the defaults
+        Server partial = serializer.deserialize(serializer.serialize(new Server()));
+        Assert.assertNull(partial.host);
+        Assert.assertNull(partial.labels);
+    }
+
+    @Test
+    public void schemaEvolution() {
+        Server server = new Server();
+        server.host = "zk-2";
+        server.port = 2182;
+        server.labels = Collections.singletonMap("zone", "b");
+
+        // an older reader without the labels field skips it
+        Server old = Server.schema(false).deserialize(Server.schema(true).serialize(server));
+        Assert.assertThat(old.host, is("zk-2"));
+        Assert.assertThat(old.port, is(2182));
+        Assert.assertNull(old.labels);
+
+        // a newer reader of older data keeps the default
+        Server fresh = Server.schema(true).deserialize(Server.schema(false).serialize(server));
+        Assert.assertNull(fresh.labels);
+        Assert.assertThat(fresh.port, is(2182));
+    }
+
+    @Test
+    public void binaryEncodingsAreSmallerThanText() {
+        StringSerializer text = StringSerializer.getInstance();
+        Assert.assertThat(LongSerializer.getInstance().encode(1234567890L).length, is(8));
+        Assert.assertThat(text.serialize("1234567890").length, is(10));
+        Assert.assertThat(BooleanSerializer.getInstance().encode(false).length, is(1));
+
+        Properties properties = new Properties();
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            properties.setProperty("service.node." + i + ".address", "10.0.0." + i + ":8080");
+            map.put("service.node." + i + ".address", "10.0.0." + i + ":8080");
+        }
+        Assert.assertTrue(StringMapSerializer.getInstance().serialize(map).length
+                < PropertiesSerializer.getInstance().serialize(properties).length);
+
+        Server server = new Server();
+        server.host = "zk-1.bytegen.com";
+        server.port = 2181;
+        server.weight = 100;
+        server.enabled = true;
+        server.load = 0.75;
+        Properties pojo = new Properties();
+        pojo.setProperty("host", server.host);
+        pojo.setProperty("port", Integer.toString(server.port));
+        pojo.setProperty("weight", Long.toString(server.weight));
+        pojo.setProperty("enabled", Boolean.toString(server.enabled));
+        pojo.setProperty("load", Double.toString(server.load));
+        Assert.assertTrue(Server.schema(true).serialize(server).length
+                < PropertiesSerializer.getInstance().serialize(pojo).length / 2);
+    }
+
+    static final class Server {
+        String host;
+        int port;
+        long weight;
+        boolean enabled;
+        double load;
+        Map<String, String> labels;
+
+        static ZKSchemaSerializer<Server> schema(boolean withLabels) {
+            ZKSchemaSerializer.Builder<Server> builder = ZKSchemaSerializer.builder(Server::new)
+                    .stringField(1, s -> s.host, (s, v) -> s.host = v)
+                    .intField(2, s -> s.port, (s, v) -> s.port = v)
+                    .longField(3, s -> s.weight, (s, v) -> s.weight = v)
+                    .booleanField(4, s -> s.enabled, (s, v) -> s.enabled = v)
+                    .doubleField(5, s -> s.load, (s, v) -> s.load = v);
+            if (withLabels) {
+                builder.field(6, s -> s.labels, (s, v) -> s.labels = v, StringMapSerializer.getInstance());
+            }
+            return builder.build();
+        }
+    }
+}
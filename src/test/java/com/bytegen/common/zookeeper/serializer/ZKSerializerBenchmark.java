@@ -0,0 +1,80 @@
+package com.bytegen.common.zookeeper.serializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.LongSupplier;
+
+/**
+ * Round trip (serialize + deserialize) cost of the binary serializers against the text ones.
+ * Run the main method with a warmed JVM, e.g. mvn test-compile and then java -cp ... ZKSerializerBenchmark.
+ * Surefire only picks up *Test classes, so the timing loops stay out of the unit test run.
+ */
+public class ZKSerializerBenchmark {
+
+    private static final int WARMUP = 2_000_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        StringSerializer text = StringSerializer.getInstance();
+
+        LongSerializer longSerializer = LongSerializer.getInstance();
+        run("counter text", () -> Long.parseLong(text.deserialize(text.serialize(Long.toString(sink + 1234567890L)))),
+                text.serialize("1234567890").length);
+        run("counter LongSerializer", () -> longSerializer.decode(longSerializer.encode(sink + 1234567890L)),
+                longSerializer.encode(1234567890L).length);
+
+        BooleanSerializer booleanSerializer = BooleanSerializer.getInstance();
+        run("flag text", () -> Boolean.parseBoolean(text.deserialize(text.serialize(Boolean.toString((sink & 1) == 0)))) ? 1 : 0,
+                text.serialize("false").length);
+        run("flag BooleanSerializer", () -> booleanSerializer.decode(booleanSerializer.encode((sink & 1) == 0)) ? 1 : 0, 1);
+
+        Properties properties = new Properties();
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            properties.setProperty("service.node." + i + ".address", "10.0.0." + i + ":8080");
+            map.put("service.node." + i + ".address", "10.0.0." + i + ":8080");
+        }
+        PropertiesSerializer propertiesSerializer = PropertiesSerializer.getInstance();
+        StringMapSerializer mapSerializer = StringMapSerializer.getInstance();
+        run("20 entries PropertiesSerializer", () -> propertiesSerializer.deserialize(propertiesSerializer.serialize(properties)).size(),
+                propertiesSerializer.serialize(properties).length);
+        run("20 entries StringMapSerializer", () -> mapSerializer.deserialize(mapSerializer.serialize(map)).size(),
+                mapSerializer.serialize(map).length);
+
+        ZKBinarySerializerTest.Server server = new ZKBinarySerializerTest.Server();
+        server.host = "zk-1.bytegen.com";
+        server.port = 2181;
+        server.weight = 100;
+        server.enabled = true;
+        server.load = 0.75;
+        ZKSchemaSerializer<ZKBinarySerializerTest.Server> schema = ZKBinarySerializerTest.Server.schema(true);
+        run("pojo as Properties", () -> {
+            Properties p = new Properties();
+            p.setProperty("host", server.host);
+            p.setProperty("port", Integer.toString(server.port));
+            p.setProperty("weight", Long.toString(server.weight));
+            p.setProperty("enabled", Boolean.toString(server.enabled));
+            p.setProperty("load", Double.toString(server.load));
+            Properties decoded = propertiesSerializer.deserialize(propertiesSerializer.serialize(p));
+            return Integer.parseInt(decoded.getProperty("port")) + Long.parseLong(decoded.getProperty("weight"));
+        }, -1);
+        run("pojo ZKSchemaSerializer", () -> schema.deserialize(schema.serialize(server)).port, schema.serialize(server).length);
+    }
+
+    private static void run(String name, LongSupplier roundTrip, int bytes) {
+        long result = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            result += roundTrip.getAsLong();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            result += roundTrip.getAsLong();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += result;
+        System.out.printf("%-34s %10.1f ns/op %8s bytes%n", name, (double) elapsed / ITERATIONS, bytes < 0 ? "-" : bytes);
+    }
+}
@@ -0,0 +1,180 @@
+package com.bytegen.common.zookeeper.snapshot;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKSubtreeViewTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+        client.createPersistent("/view/a", "a1", StringSerializer.getInstance());
+        client.createPersistent("/view/b", "b1", StringSerializer.getInstance());
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void persistentMapSharesUntouchedEntries() {
+        ZKPersistentMap<String> map = ZKPersistentMap.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.plus("k" + i, "v" + i);
+        }
+        // "Aa" and "BB" have the same hash code
+        ZKPersistentMap<String> collided = map.plus("Aa", "x").plus("BB", "y");
+        ZKPersistentMap<String> removed = collided.minus("Aa").minus("k7");
+
+        Assert.assertThat(map.size(), is(100));
+        Assert.assertThat(collided.size(), is(102));
+        Assert.assertThat(collided.get("BB"), is("y"));
+        Assert.assertThat(removed.size(), is(100));
+        Assert.assertFalse(removed.containsKey("Aa"));
+        Assert.assertThat(removed.get("BB"), is("y"));
+        Assert.assertThat(map.get("k7"), is("v7"));
+        Assert.assertSame(map, map.plus("k1", map.get("k1")));
+    }
+
+    @Test
+    public void publishTransactionCoalesced() throws Exception {
+        try (ZKSubtreeView view = client.newSubtreeView("/view", 16, 500, TimeUnit.MILLISECONDS)) {
+            ZKSnapshot first = view.awaitSnapshot(10, TimeUnit.SECONDS);
+            Assert.assertThat(first.getChildrenNames("/view"), is(Arrays.asList("a", "b")));
+
+            List<ZKSnapshot> published = new ArrayList<>();
+            view.addListener((previous, current) -> {
+                synchronized (published) {
+                    published.add(current);
+                }
+            });
+            CuratorFramework framework = client.getFramework();
+            framework.transaction().forOperations(
+                    framework.transactionOp().setData().forPath("/view/a", bytes("a2")),
+                    framework.transactionOp().setData().forPath("/view/b", bytes("b2")),
+                    framework.transactionOp().create().forPath("/view/c", bytes("c1")));
+
+            ZKSnapshot second = await(view, s -> null != s.getNode("/view/c")
+                    && "a2".equals(string(s.getData("/view/a"))) && "b2".equals(string(s.getData("/view/b"))));
+            Assert.assertTrue(second.getZxid() > first.getZxid());
+            // usually one snapshot, but coalescing is time based: events straddling an interval split the update
+            long deadline = System.currentTimeMillis() + 10000;
+            while (true) {
+                synchronized (published) {
+                    if (published.contains(second)) {
+                        Assert.assertTrue(published.size() <= 3);
+                        Assert.assertThat(second.getVersion(), is(first.getVersion() + published.size()));
+                        break;
+                    }
+                }
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            // earlier snapshots are immutable
+            Assert.assertThat(string(first.getData("/view/a")), is("a1"));
+            Assert.assertNull(first.getNode("/view/c"));
+        }
+    }
+
+    @Test
+    public void startFromInitializedCache() throws Exception {
+        // the caches have sent INITIALIZED before any view listens
+        client.getTreeCache("/view");
+        client.getTreeCache("/missing");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!client.isTreeCacheInitialized("/view") || !client.isTreeCacheInitialized("/missing")) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        try (ZKSubtreeView view = client.newSubtreeView("/view");
+             ZKSubtreeView missing = client.newSubtreeView("/missing")) {
+            ZKSnapshot snapshot = view.awaitSnapshot(10, TimeUnit.SECONDS);
+            Assert.assertThat(snapshot.getChildrenNames("/view"), is(Arrays.asList("a", "b")));
+            Assert.assertNull(missing.awaitSnapshot(10, TimeUnit.SECONDS).getNode("/missing"));
+        }
+    }
+
+    @Test
+    public void keepBoundedHistory() throws Exception {
+        try (ZKSubtreeView view = client.newSubtreeView("/view", 3, 0, TimeUnit.MILLISECONDS)) {
+            view.awaitSnapshot(10, TimeUnit.SECONDS);
+            for (int i = 2; i <= 5; i++) {
+                String value = "a" + i;
+                client.setData("/view/a", value, StringSerializer.getInstance());
+                await(view, s -> value.equals(string(s.getData("/view/a"))));
+            }
+
+            List<ZKSnapshot> history = view.getHistory();
+            Assert.assertThat(history.size(), is(3));
+            Assert.assertSame(view.getSnapshot(), history.get(0));
+            Assert.assertThat(string(history.get(2).getData("/view/a")), is("a3"));
+            for (int i = 1; i < history.size(); i++) {
+                Assert.assertThat(history.get(i).getVersion(), is(history.get(i - 1).getVersion() - 1));
+                Assert.assertTrue(history.get(i).getZxid() < history.get(i - 1).getZxid());
+            }
+        }
+    }
+
+    @Test
+    public void rollbackToEarlierSnapshot() throws Exception {
+        try (ZKSubtreeView view = client.newSubtreeView("/view")) {
+            ZKSnapshot first = view.awaitSnapshot(10, TimeUnit.SECONDS);
+
+            client.setData("/view/a", "a2", StringSerializer.getInstance());
+            client.deletePath("/view/b", true);
+            client.createPersistent("/view/c/d", "d1", StringSerializer.getInstance());
+            await(view, s -> null != s.getNode("/view/c/d") && null == s.getNode("/view/b"));
+
+            Assert.assertTrue(view.rollback(first) > 0);
+            Assert.assertThat(client.getData("/view/a", StringSerializer.getInstance()), is("a1"));
+            Assert.assertThat(client.getData("/view/b", StringSerializer.getInstance()), is("b1"));
+            Assert.assertFalse(client.exists("/view/c"));
+
+            ZKSnapshot restored = await(view, s -> ZKSnapshot.diff(first, s).isEmpty());
+            Assert.assertTrue(restored.getVersion() > first.getVersion());
+        }
+    }
+
+    private static ZKSnapshot await(ZKSubtreeView view, Predicate<ZKSnapshot> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            ZKSnapshot snapshot = view.getSnapshot();
+            if (null != snapshot && condition.test(snapshot)) {
+                return snapshot;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Snapshot not published in time: " + view.getSnapshot());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return null == data ? null : new String(data, StandardCharsets.UTF_8);
+    }
+}
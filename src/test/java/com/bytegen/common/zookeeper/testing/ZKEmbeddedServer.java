@@ -0,0 +1,77 @@
+package com.bytegen.common.zookeeper.testing;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.ZKCuratorConnectionFactory;
+import com.bytegen.common.zookeeper.ZKFacade;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.KillSession;
+import org.apache.curator.test.TestingServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: In-process zookeeper server for tests. Installs a connection factory with short timeouts in {@link ZKFacade},
+ * so session expiry and reconnects show up in seconds; close restores the default factory.
+ */
+public final class ZKEmbeddedServer implements Closeable {
+
+    public static final int SESSION_TIMEOUT = 5000;
+    public static final int CONNECTION_TIMEOUT = 3000;
+
+    private final TestingServer server;
+
+    public ZKEmbeddedServer() throws Exception {
+        server = new TestingServer(true);
+        ZKFacade.setConnectionFactory(
+                new ZKCuratorConnectionFactory(SESSION_TIMEOUT, CONNECTION_TIMEOUT, new RetryNTimes(20, 100)));
+    }
+
+    public String getConnectString() {
+        return server.getConnectString();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * Client connected to the server directly.
+     */
+    public ZKClient newClient() {
+        return ZKFacade.getClient(getConnectString(), null);
+    }
+
+    /**
+     * Proxy in front of the server, connect clients to {@link ZKFaultProxy#getConnectString()} to inject faults.
+     */
+    public ZKFaultProxy newFaultProxy() throws IOException {
+        return new ZKFaultProxy("127.0.0.1", getPort());
+    }
+
+    /**
+     * Expire the session of the client, as the server does after a long partition.
+     */
+    public void expireSession(ZKClient client) throws Exception {
+        KillSession.kill(client.getFramework().getZookeeperClient().getZooKeeper(), getConnectString());
+    }
+
+    /**
+     * Stop the server keeping its data, until {@link #restart()}.
+     */
+    public void stop() throws IOException {
+        server.stop();
+    }
+
+    public void restart() throws Exception {
+        server.restart();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ZKFacade.setConnectionFactory(null);
+        server.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.bytegen.common.zookeeper.testing;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.ZKFacade;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKFaultInjectionTest {
+
+    private ZKEmbeddedServer server;
+    private ZKFaultProxy proxy;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        proxy = server.newFaultProxy();
+        client = ZKFacade.getClient(proxy.getConnectString(), null);
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+        client.createPersistent("/fault/node", "v1", StringSerializer.getInstance());
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        proxy.close();
+        server.close();
+    }
+
+    @Test
+    public void recordOperations() throws Exception {
+        try (ZKOperationRecorder recorder = ZKOperationRecorder.start(client)) {
+            for (int i = 0; i < 3; i++) {
+                client.getData("/fault/node", StringSerializer.getInstance());
+            }
+            client.getChildrenNames("/fault");
+
+            Assert.assertTrue(recorder.awaitCount(ZKActionType.GET_DATA, 3, 5, TimeUnit.SECONDS));
+            Assert.assertTrue(recorder.awaitCount(ZKActionType.GET_CHILD_NAMES, 1, 5, TimeUnit.SECONDS));
+            Assert.assertThat(recorder.getCount(ZKActionType.SET_DATA), is(0L));
+        }
+    }
+
+    @Test
+    public void injectLatency() throws Exception {
+        proxy.setLatency(100, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        client.getData("/fault/node");
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void recoverFromDisconnect() throws Exception {
+        int accepted = proxy.getAcceptedCount();
+        proxy.disconnect();
+
+        Assert.assertThat(client.getData("/fault/node", StringSerializer.getInstance()), is("v1"));
+        Assert.assertTrue(proxy.getAcceptedCount() > accepted);
+    }
+
+    @Test
+    public void expireSession() throws Exception {
+        client.createEphemeral("/fault/ephemeral");
+        server.expireSession(client);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (client.exists("/fault/ephemeral") && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(client.exists("/fault/ephemeral"));
+        Assert.assertThat(client.getData("/fault/node", StringSerializer.getInstance()), is("v1"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.bytegen.common.zookeeper.testing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: TCP proxy between clients and a zookeeper server which injects latency, disconnects and partitions.
+ */
+public final class ZKFaultProxy implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZKFaultProxy.class);
+
+    private final String targetHost;
+    private final int targetPort;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private volatile long latencyMillis;
+    private volatile boolean refusing;
+    private volatile boolean closed;
+
+    public ZKFaultProxy(String targetHost, int targetPort) throws IOException {
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("zookeeper-fault-proxy-thread-%d")
+                .setDaemon(true)
+                .build());
+        executor.execute(this::acceptLoop);
+    }
+
+    public String getConnectString() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Delay every forwarded packet in both directions, so a request takes about twice the latency more.
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        this.latencyMillis = unit.toMillis(latency);
+    }
+
+    /**
+     * Drop all current connections; clients reconnect at once.
+     */
+    public void disconnect() {
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Drop all connections and refuse new ones until {@link #heal()}; sessions expire if it lasts long enough.
+     */
+    public void partition() {
+        refusing = true;
+        disconnect();
+    }
+
+    public void heal() {
+        refusing = false;
+    }
+
+    /**
+     * Connections accepted so far, reconnects included.
+     */
+    public int getAcceptedCount() {
+        return accepted.get();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Fault proxy accept failed.", e);
+                }
+                return;
+            }
+            if (refusing) {
+                closeQuietly(client);
+                continue;
+            }
+            try {
+                Socket server = new Socket(targetHost, targetPort);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                accepted.incrementAndGet();
+                executor.execute(() -> pump(client, server));
+                executor.execute(() -> pump(server, client));
+            } catch (IOException e) {
+                logger.warn("Fault proxy can't connect to {}:{}", targetHost, targetPort);
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private void pump(Socket from, Socket to) {
+        byte[] buffer = new byte[8192];
+        try {
+            InputStream input = from.getInputStream();
+            OutputStream output = to.getOutputStream();
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                long latency = latencyMillis;
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                output.write(buffer, 0, read);
+                output.flush();
+            }
+        } catch (IOException e) {
+            // dropped by disconnect or by either side
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private void closeQuietly(Socket socket) {
+        sockets.remove(socket);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        disconnect();
+        executor.shutdownNow();
+    }
+}
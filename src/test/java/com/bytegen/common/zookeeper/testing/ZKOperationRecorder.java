@@ -0,0 +1,86 @@
+package com.bytegen.common.zookeeper.testing;
+
+import com.bytegen.common.zookeeper.ZKActionType;
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.monitor.ZKActionListener;
+import com.bytegen.common.zookeeper.monitor.ZKActionMonitor;
+
+import java.io.Closeable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User: xiang
+ * Date: 2018/8/7
+ * Desc: Action subscriber counting operations per type, of one client or of all. Monitor events are delivered
+ * in background, so wait for counts with {@link #awaitCount}.
+ */
+public final class ZKOperationRecorder implements ZKActionListener, Closeable {
+
+    private final ZKClient client;
+    private final Map<ZKActionType, LongAdder> counts = new EnumMap<>(ZKActionType.class);
+
+    private ZKOperationRecorder(ZKClient client) {
+        this.client = client;
+        for (ZKActionType type : ZKActionType.values()) {
+            counts.put(type, new LongAdder());
+        }
+    }
+
+    /**
+     * Start recording operations of the client, or of all clients if null.
+     */
+    public static ZKOperationRecorder start(ZKClient client) {
+        ZKOperationRecorder recorder = new ZKOperationRecorder(client);
+        ZKActionMonitor.getInstance().addSubscriber(recorder);
+        return recorder;
+    }
+
+    @Override
+    public void onAction(ZKActionType type, ZKClient client, String path, Object data) {
+        if (null == this.client || this.client == client) {
+            counts.get(type).increment();
+        }
+    }
+
+    public long getCount(ZKActionType type) {
+        return counts.get(type).sum();
+    }
+
+    public Map<ZKActionType, Long> getCounts() {
+        Map<ZKActionType, Long> snapshot = new EnumMap<>(ZKActionType.class);
+        for (Map.Entry<ZKActionType, LongAdder> entry : counts.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Wait until at least the expected number of operations of the type are recorded.
+     *
+     * @return false on timeout
+     */
+    public boolean awaitCount(ZKActionType type, long expected, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (getCount(type) < expected) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public void reset() {
+        for (LongAdder count : counts.values()) {
+            count.reset();
+        }
+    }
+
+    @Override
+    public void close() {
+        ZKActionMonitor.getInstance().removeSubscriber(this);
+    }
+}
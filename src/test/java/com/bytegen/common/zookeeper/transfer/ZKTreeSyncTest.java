@@ -0,0 +1,105 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKTreeSyncTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+        client.createPersistent("/src/a", "a", StringSerializer.getInstance());
+        client.createPersistent("/src/a/b", "b", StringSerializer.getInstance());
+        client.createPersistent("/src/c", "c", StringSerializer.getInstance());
+    }
+
+    @After
+    public void close() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void syncCreatesUpdatesAndDeletes() throws Exception {
+        client.createPersistent("/dst/a", "old", StringSerializer.getInstance());
+        client.createPersistent("/dst/stale/child", "x", StringSerializer.getInstance());
+        ZKTreeSync sync = new ZKTreeSync(client, "/src", client, "/dst");
+
+        ZKTreeDiff diff = sync.sync();
+        Assert.assertFalse(diff.isEmpty());
+        Assert.assertThat(client.getData("/dst/a", StringSerializer.getInstance()), is("a"));
+        Assert.assertThat(client.getData("/dst/a/b", StringSerializer.getInstance()), is("b"));
+        Assert.assertThat(client.getData("/dst/c", StringSerializer.getInstance()), is("c"));
+        Assert.assertFalse(client.exists("/dst/stale"));
+        Assert.assertTrue(sync.diff().isEmpty());
+    }
+
+    @Test
+    public void syncNamespaceRootKeepsNodeNamedZookeeper() throws Exception {
+        ZKClient source = client.usingNamespace("source");
+        ZKClient target = client.usingNamespace("target");
+        try {
+            source.createPersistent("/zookeeper", "user", StringSerializer.getInstance());
+            new ZKTreeSync(source, "/", target, "/").sync();
+
+            Assert.assertThat(target.getData("/zookeeper", StringSerializer.getInstance()), is("user"));
+        } finally {
+            target.close();
+            source.close();
+        }
+    }
+
+    @Test
+    public void reuseDigestsOfUnchangedNodes() throws Exception {
+        ZKTreeSync sync = new ZKTreeSync(client, "/src", client, "/dst");
+        sync.sync();
+        // digests of the nodes written by the sync are computed once more
+        sync.diff();
+
+        ZKTreeDiff unchanged = sync.diff();
+        Assert.assertTrue(unchanged.isEmpty());
+        Assert.assertThat(unchanged.getComparedNodes(), is(4L));
+        Assert.assertThat(unchanged.getDataReads(), is(0L));
+
+        client.setData("/src/a/b", "B", StringSerializer.getInstance());
+        ZKTreeDiff changed = sync.diff();
+        Assert.assertThat(changed.getChanges().size(), is(1));
+        Assert.assertThat(changed.getChanges().get(0).getType(), is(ZKNodeChange.Type.UPDATE));
+        Assert.assertThat(changed.getChanges().get(0).getPath(), is("/a/b"));
+        // same length, so only the source data is read: the target digest is still valid
+        Assert.assertThat(changed.getDataReads(), is(1L));
+    }
+
+    @Test
+    public void skipEphemeralNodes() throws Exception {
+        client.createEphemeral("/src/a/service", "s", StringSerializer.getInstance());
+        client.createPersistent("/dst/a", "a", StringSerializer.getInstance());
+        client.createEphemeral("/dst/a/registered", "r", StringSerializer.getInstance());
+        ZKTreeSync sync = new ZKTreeSync(client, "/src", client, "/dst");
+
+        sync.sync();
+        Assert.assertFalse(client.exists("/dst/a/service"));
+        Assert.assertTrue(client.exists("/dst/a/registered"));
+        List<String> children = client.getChildrenNames("/dst/a");
+        Collections.sort(children);
+        Assert.assertThat(children, is(Arrays.asList("b", "registered")));
+        Assert.assertTrue(sync.diff().isEmpty());
+    }
+}
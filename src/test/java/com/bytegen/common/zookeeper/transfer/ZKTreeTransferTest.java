@@ -0,0 +1,146 @@
+package com.bytegen.common.zookeeper.transfer;
+
+import com.bytegen.common.zookeeper.ZKClient;
+import com.bytegen.common.zookeeper.limit.ZKRateLimitRule;
+import com.bytegen.common.zookeeper.limit.ZKRateLimiter;
+import com.bytegen.common.zookeeper.serializer.StringSerializer;
+import com.bytegen.common.zookeeper.testing.ZKEmbeddedServer;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+
+public class ZKTreeTransferTest {
+
+    private ZKEmbeddedServer server;
+    private ZKClient client;
+
+    @Before
+    public void init() throws Exception {
+        server = new ZKEmbeddedServer();
+        client = server.newClient();
+        Assert.assertTrue(client.blockUntilConnected(10, TimeUnit.SECONDS));
+        client.createPersistent("/src/a", "a", StringSerializer.getInstance());
+        client.createPersistent("/src/a/b", "b", StringSerializer.getInstance());
+        client.createPersistent("/src/c", "c", StringSerializer.getInstance());
+    }
+
+    @After
+    public void close() throws Exception {
+        client.setRateLimiter(null);
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void recordsRoundTrip() throws Exception {
+        Stat ephemeral = new Stat();
+        ephemeral.setEphemeralOwner(42);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZKRecordWriter writer = new ZKRecordWriter(output)) {
+            writer.write(new ZKNodeRecord("/", new Stat(), bytes("root")));
+            writer.write(new ZKNodeRecord("/a", new Stat(), null));
+            writer.write(new ZKNodeRecord("/a/e", ephemeral, bytes("e")));
+            writer.finish();
+            Assert.assertThat(writer.getCount(), is(3L));
+        }
+
+        try (ZKRecordReader reader = new ZKRecordReader(new ByteArrayInputStream(output.toByteArray()))) {
+            ZKNodeRecord root = reader.read();
+            Assert.assertThat(root.getPath(), is("/"));
+            Assert.assertThat(string(root.getData()), is("root"));
+            Assert.assertFalse(root.isEphemeral());
+            ZKNodeRecord a = reader.read();
+            Assert.assertThat(a.getPath(), is("/a"));
+            Assert.assertNull(a.getData());
+            ZKNodeRecord e = reader.read();
+            Assert.assertThat(e.getPath(), is("/a/e"));
+            Assert.assertTrue(e.isEphemeral());
+            Assert.assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void exportThenImportUnderAnotherPath() throws Exception {
+        client.createEphemeral("/src/e", "e", StringSerializer.getInstance());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertThat(client.exportTree("/src", output), is(5L));
+
+        long imported = client.importTree("/copy/tree", new ByteArrayInputStream(output.toByteArray()));
+
+        // ephemeral nodes stay with their session
+        Assert.assertThat(imported, is(4L));
+        Assert.assertThat(client.getData("/copy/tree/a", StringSerializer.getInstance()), is("a"));
+        Assert.assertThat(client.getData("/copy/tree/a/b", StringSerializer.getInstance()), is("b"));
+        Assert.assertThat(client.getData("/copy/tree/c", StringSerializer.getInstance()), is("c"));
+        Assert.assertThat(sorted(client.getChildrenNames("/copy/tree")), is(Arrays.asList("a", "c")));
+        Assert.assertFalse(client.exists("/copy/tree/e"));
+    }
+
+    @Test
+    public void importOverExistingNodesTakesOnePermitPerNode() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertThat(client.exportTree("/src", output), is(4L));
+        client.createPersistent("/copy/a", "old", StringSerializer.getInstance());
+        // the multi-op fails on the existing node and falls back to one by one within the same permits
+        client.setRateLimiter(new ZKRateLimiter().limitAll(ZKRateLimitRule.failFast(0.001, 4)));
+
+        Assert.assertThat(client.importTree("/copy", new ByteArrayInputStream(output.toByteArray())), is(4L));
+
+        client.setRateLimiter(null);
+        Assert.assertThat(client.getData("/copy/a", StringSerializer.getInstance()), is("a"));
+        Assert.assertThat(client.getData("/copy/a/b", StringSerializer.getInstance()), is("b"));
+        Assert.assertThat(client.getData("/copy/c", StringSerializer.getInstance()), is("c"));
+    }
+
+    @Test
+    public void exportNamespaceRootKeepsNodeNamedZookeeper() throws Exception {
+        ZKClient tenant = client.usingNamespace("tenant");
+        try {
+            tenant.createPersistent("/zookeeper", "user", StringSerializer.getInstance());
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Assert.assertThat(tenant.exportTree("/", output), is(2L));
+
+            // the system node is skipped at the root of the ensemble only
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            client.exportTree("/", all);
+            tenant.importTree("/copy", new ByteArrayInputStream(output.toByteArray()));
+            Assert.assertThat(tenant.getData("/copy/zookeeper", StringSerializer.getInstance()), is("user"));
+            List<String> paths = new ArrayList<>();
+            try (ZKRecordReader reader = new ZKRecordReader(new ByteArrayInputStream(all.toByteArray()))) {
+                for (ZKNodeRecord record = reader.read(); null != record; record = reader.read()) {
+                    paths.add(record.getPath());
+                }
+            }
+            Assert.assertTrue(paths.contains("/tenant/zookeeper"));
+            Assert.assertFalse(paths.contains("/zookeeper"));
+        } finally {
+            tenant.close();
+        }
+    }
+
+    private static List<String> sorted(List<String> names) {
+        Collections.sort(names);
+        return names;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return null == data ? null : new String(data, StandardCharsets.UTF_8);
+    }
+}